@@ -0,0 +1,222 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a multi-touch trace through {@link CustomGestureDetector} and logs the time per event
+ * under {@value #TAG}. The trace is laid out like one recorded from a 240 Hz digitizer and
+ * delivered in batches of two samples: a drag, a second finger joining to pinch and turn, the
+ * first finger lifting so the active pointer moves to another index, the first finger coming
+ * back and the second lifting, then a drag to the end.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomGestureDetectorBenchmark {
+
+    private static final String TAG = "GestureBenchmark";
+    private static final int WARM_UP_REPLAYS = 50;
+    private static final int REPLAYS = 500;
+    private static final long SAMPLE_MILLIS = 4L;
+    private static final int SAMPLES_PER_EVENT = 2;
+
+    private final ArrayList<MotionEvent> mTrace = new ArrayList<>();
+    private long mTime;
+    private int mSample;
+    private Context mContext;
+    private int mDrags;
+    private int mTransforms;
+
+    private final OnGestureListener mListener = new OnGestureListener() {
+        @Override
+        public void onDrag(float dx, float dy) {
+            mDrags++;
+        }
+
+        @Override
+        public void onFling(float startX, float startY, float velocityX, float velocityY) {
+        }
+
+        @Override
+        public void onTransform(float dx, float dy, float scaleFactor, float degrees,
+            float focusX, float focusY) {
+            mTransforms++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        recordTrace();
+    }
+
+    @After
+    public void tearDown() {
+        for (int i = 0; i < mTrace.size(); i++) {
+            mTrace.get(i).recycle();
+        }
+    }
+
+    @Test
+    public void replay_direct() {
+        final CustomGestureDetector detector = new CustomGestureDetector(mContext, mListener);
+        detector.setRotationEnabled(true);
+        report("direct", replay(detector));
+    }
+
+    @Test
+    public void replay_resampled() {
+        final CustomGestureDetector detector = new CustomGestureDetector(mContext, mListener);
+        detector.setRotationEnabled(true);
+        detector.setResamplingEnabled(true);
+        report("resampled", replay(detector));
+    }
+
+    /**
+     * @return the best time per event of any replay, in nanoseconds
+     */
+    private double replay(CustomGestureDetector detector) {
+        for (int i = 0; i < WARM_UP_REPLAYS; i++) {
+            replayOnce(detector);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < REPLAYS; i++) {
+            mDrags = 0;
+            mTransforms = 0;
+            final long start = System.nanoTime();
+            replayOnce(detector);
+            best = Math.min(best, System.nanoTime() - start);
+            assertTrue("No drags", mDrags > 0);
+            assertTrue("No transforms", mTransforms > 0);
+        }
+        return (double) best / mTrace.size();
+    }
+
+    private void replayOnce(CustomGestureDetector detector) {
+        for (int i = 0; i < mTrace.size(); i++) {
+            final MotionEvent event = mTrace.get(i);
+            detector.onTouchEvent(event);
+            if (detector.hasResampledDrag()) {
+                // Frames follow the events, as the attacher flushes on the next frame
+                detector.flushResampledDrag(event.getEventTime() + SAMPLE_MILLIS);
+            }
+        }
+    }
+
+    private void report(String mode, double nanosPerEvent) {
+        Log.i(TAG, String.format(Locale.US, "%s: %d events, %.0f ns per event", mode,
+            mTrace.size(), nanosPerEvent));
+    }
+
+    private void recordTrace() {
+        mTime = 0L;
+        mSample = 0;
+        add(MotionEvent.ACTION_DOWN, 0, true, false);
+        moves(40, true, false);
+        add(MotionEvent.ACTION_POINTER_DOWN, 1, true, true);
+        moves(60, true, true);
+        // The first finger lifts, so the second is the only pointer, at index 0
+        add(MotionEvent.ACTION_POINTER_UP, 0, true, true);
+        moves(30, false, true);
+        add(MotionEvent.ACTION_POINTER_DOWN, 0, true, true);
+        moves(30, true, true);
+        add(MotionEvent.ACTION_POINTER_UP, 1, true, true);
+        moves(20, true, false);
+        add(MotionEvent.ACTION_UP, 0, true, false);
+    }
+
+    private void moves(int count, boolean first, boolean second) {
+        for (int i = 0; i < count; i++) {
+            add(MotionEvent.ACTION_MOVE, 0, first, second);
+        }
+    }
+
+    /**
+     * Appends an event for the pointers that are down, which for a move carries
+     * {@value #SAMPLES_PER_EVENT} samples
+     */
+    private void add(int action, int actionIndex, boolean first, boolean second) {
+        final int count = (first ? 1 : 0) + (second ? 1 : 0);
+        final MotionEvent.PointerProperties[] properties =
+            new MotionEvent.PointerProperties[count];
+        int index = 0;
+        if (first) {
+            properties[index++] = pointer(0);
+        }
+        if (second) {
+            properties[index] = pointer(1);
+        }
+        final int samples = action == MotionEvent.ACTION_MOVE ? SAMPLES_PER_EVENT : 1;
+        MotionEvent event = null;
+        for (int i = 0; i < samples; i++) {
+            mTime += SAMPLE_MILLIS;
+            mSample++;
+            final MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[count];
+            for (int p = 0; p < count; p++) {
+                coords[p] = position(properties[p].id);
+            }
+            if (event == null) {
+                event = MotionEvent.obtain(0L, mTime,
+                    action | (actionIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT), count,
+                    properties, coords, 0, 0, 1f, 1f, 0, 0, 0, 0);
+            } else {
+                event.addBatch(mTime, coords, 0);
+            }
+        }
+        mTrace.add(event);
+    }
+
+    private static MotionEvent.PointerProperties pointer(int id) {
+        final MotionEvent.PointerProperties properties = new MotionEvent.PointerProperties();
+        properties.id = id;
+        properties.toolType = MotionEvent.TOOL_TYPE_FINGER;
+        return properties;
+    }
+
+    /**
+     * @return where a pointer is at the current sample; the two move on different curves, so a
+     * pinch both spreads and turns
+     */
+    private MotionEvent.PointerCoords position(int id) {
+        final MotionEvent.PointerCoords coords = new MotionEvent.PointerCoords();
+        final double t = mSample * 0.02;
+        if (id == 0) {
+            coords.x = (float) (300 + 150 * Math.cos(t));
+            coords.y = (float) (800 + 150 * Math.sin(t));
+        } else {
+            coords.x = (float) (700 - 250 * Math.cos(t * 0.7));
+            coords.y = (float) (1000 + 120 * Math.sin(t * 1.3));
+        }
+        coords.pressure = 1f;
+        coords.size = 1f;
+        return coords;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.view.MotionEvent;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Feeds {@link CustomGestureDetector} hand-made events. Instrumented, as it needs real
+ * {@link MotionEvent}s.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomGestureDetectorTest {
+
+    private static final long EVENT_MILLIS = 8L;
+    private static final float STEP = 20f;
+
+    private CustomGestureDetector mDetector;
+    private float mDraggedX, mDraggedY;
+    private int mDrags;
+
+    @Before
+    public void setUp() {
+        mDetector = new CustomGestureDetector(
+            InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            new OnGestureListener() {
+                @Override
+                public void onDrag(float dx, float dy) {
+                    mDraggedX += dx;
+                    mDraggedY += dy;
+                    mDrags++;
+                }
+
+                @Override
+                public void onFling(float startX, float startY, float velocityX,
+                    float velocityY) {
+                }
+
+                @Override
+                public void onTransform(float dx, float dy, float scaleFactor, float degrees,
+                    float focusX, float focusY) {
+                }
+            });
+        mDetector.setResamplingEnabled(true);
+    }
+
+    @Test
+    public void resampledDrag_frameAfterUp_doesNotOvershoot() {
+        long time = 0L;
+        float x = 100f;
+        final float y = 300f;
+        send(MotionEvent.ACTION_DOWN, time, x, y);
+        for (int i = 0; i < 10; i++) {
+            time += EVENT_MILLIS;
+            x += STEP;
+            send(MotionEvent.ACTION_MOVE, time, x, y);
+            // Frames come half an event later, so the drag is predicted ahead of the finger
+            mDetector.flushResampledDrag(time + EVENT_MILLIS / 2);
+        }
+        time += EVENT_MILLIS;
+        send(MotionEvent.ACTION_UP, time, x, y);
+        assertEquals(x - 100f, mDraggedX, 0.01f);
+        assertFalse(mDetector.hasResampledDrag());
+
+        // The frame that was already due when the finger lifted
+        final int drags = mDrags;
+        mDetector.flushResampledDrag(time + EVENT_MILLIS);
+        assertEquals(drags, mDrags);
+        assertEquals(x - 100f, mDraggedX, 0.01f);
+        assertEquals(0f, mDraggedY, 0f);
+    }
+
+    private void send(int action, long time, float x, float y) {
+        final MotionEvent event = MotionEvent.obtain(0L, time, action, x, y, 0);
+        try {
+            mDetector.onTouchEvent(event);
+        } finally {
+            event.recycle();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.drawable.ShapeDrawable;
+import android.os.Debug;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the attacher on a real {@link PhotoView} through the work of many gestures and checks,
+ * through the runtime's per-thread allocation counter, that none of it allocates once warmed
+ * up: laying out the base matrix, rotating with and without animation, dragging, pinching,
+ * flinging and animated zooms. Gestures go straight to the attacher's
+ * {@link OnGestureListener}, as the framework's detectors are not ours to keep free of garbage,
+ * and frames are driven by hand through its {@link AnimationDriver}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotoViewAttacherAllocationTest {
+
+    private static final int WARM_UP_CYCLES = 50;
+    private static final int MEASURED_CYCLES = 200;
+    private static final int MAX_FRAMES = 60;
+    private static final long FRAME_NANOS = 16000000L;
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+
+    private PhotoViewAttacher mAttacher;
+    private AnimationDriver mDriver;
+    private OnGestureListener mGestures;
+    private long mAllocations;
+
+    @Test
+    public void gestures_doNotAllocate() {
+        assertEquals(0L, countAllocations(false, false));
+    }
+
+    @Test
+    public void gestures_withDecomposedStateAndFrameCoalescing_doNotAllocate() {
+        assertEquals(0L, countAllocations(true, true));
+    }
+
+    private long countAllocations(final boolean decomposed, final boolean coalescing) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                setUpView(decomposed, coalescing);
+                runCycles(WARM_UP_CYCLES);
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                runCycles(MEASURED_CYCLES);
+                mAllocations = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+            }
+        });
+        return mAllocations;
+    }
+
+    private void setUpView(boolean decomposed, boolean coalescing) {
+        final PhotoView view = new PhotoView(
+            InstrumentationRegistry.getInstrumentation().getTargetContext());
+        final ShapeDrawable drawable = new ShapeDrawable();
+        drawable.setIntrinsicWidth(4000);
+        drawable.setIntrinsicHeight(3000);
+        view.setImageDrawable(drawable);
+        view.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        mAttacher = view.getAttacher();
+        mAttacher.setDecomposedStateEnabled(decomposed);
+        mAttacher.setFrameCoalescingEnabled(coalescing);
+        mAttacher.setAllowRotateInAnyScale(true);
+        mDriver = mAttacher.getAnimationDriver();
+        mGestures = mAttacher.getOnGestureListener();
+    }
+
+    private void runCycles(int cycles) {
+        final float centerX = VIEW_WIDTH / 2f;
+        final float centerY = VIEW_HEIGHT / 2f;
+        for (int i = 0; i < cycles; i++) {
+            mAttacher.update();
+            mAttacher.rotateTo(180, true, true);
+            runFrames();
+            mAttacher.rotateTo(0, true, false);
+            mAttacher.setScale(2f, true);
+            runFrames();
+            mGestures.onDrag(-40f, 10f);
+            mGestures.onTransform(5f, -5f, 1.1f, 3f, centerX, centerY);
+            runFrames();
+            mGestures.onFling(centerX, centerY, -4000f, 1000f);
+            runFrames();
+            mAttacher.setScale(1f, true);
+            runFrames();
+            mAttacher.setRotationTo(0f);
+            runFrames();
+        }
+    }
+
+    /**
+     * Ticks the driver until nothing runs, or for {@link #MAX_FRAMES}, then stops whatever is
+     * left. Flings follow the real clock, so they rarely finish within the frames given.
+     */
+    private void runFrames() {
+        long frameTime = mDriver.now();
+        int frames = 0;
+        do {
+            frameTime += FRAME_NANOS;
+            mDriver.doFrame(frameTime);
+        } while (mDriver.isRunning() && ++frames < MAX_FRAMES);
+        mDriver.cancelAll();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes every full resolution tile of a synthetic large JPEG through the
+ * {@link TileDecodeScheduler}, the way {@link TiledImageDrawable} does, with decoder pools of 1,
+ * 2, 4 and 8 {@link android.graphics.BitmapRegionDecoder}s and the same number of threads. The
+ * throughput of each is logged under {@value #TAG}, for comparing devices and changes; only the
+ * work itself is checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RegionTileDecoderBenchmark {
+
+    private static final String TAG = "TileDecodeBenchmark";
+    private static final int[] POOL_SIZES = {1, 2, 4, 8};
+    // 16 megapixels, in the range of a phone camera
+    private static final int IMAGE_WIDTH = 4608;
+    private static final int IMAGE_HEIGHT = 3456;
+    private static final int JPEG_QUALITY = 90;
+    private static final int RUNS = 3;
+    private static final long TIMEOUT_SECONDS = 120L;
+
+    private File mFile;
+    private TilePyramid mPyramid;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("benchmark", ".jpg", InstrumentationRegistry
+            .getInstrumentation().getTargetContext().getCacheDir());
+        writeSyntheticJpeg(mFile);
+        mPyramid = new TilePyramid(IMAGE_WIDTH, IMAGE_HEIGHT, TilePyramid.DEFAULT_TILE_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void decodeThroughput_byPoolSize() throws Exception {
+        final int tiles = mPyramid.getColumnCount(0) * mPyramid.getRowCount(0);
+        // Warms up the decoder library and the file cache, so the first size is not penalized
+        decodeAll(1);
+
+        final double[] tilesPerSecond = new double[POOL_SIZES.length];
+        for (int i = 0; i < POOL_SIZES.length; i++) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                best = Math.min(best, decodeAll(POOL_SIZES[i]));
+            }
+            tilesPerSecond[i] = tiles * 1e9 / best;
+        }
+
+        final StringBuilder report = new StringBuilder();
+        report.append(tiles).append(" tiles of ").append(IMAGE_WIDTH).append('x')
+            .append(IMAGE_HEIGHT).append(" on ")
+            .append(Runtime.getRuntime().availableProcessors()).append(" cores");
+        for (int i = 0; i < POOL_SIZES.length; i++) {
+            report.append(String.format(Locale.US, "\n%d decoders: %.1f tiles/s, %.2fx",
+                POOL_SIZES[i], tilesPerSecond[i], tilesPerSecond[i] / tilesPerSecond[0]));
+        }
+        Log.i(TAG, report.toString());
+    }
+
+    /**
+     * @return how long decoding every full resolution tile took, in nanoseconds
+     */
+    private long decodeAll(int poolSize) throws Exception {
+        final RegionTileDecoder decoder = new RegionTileDecoder(mFile.getPath(), poolSize);
+        final int tiles = mPyramid.getColumnCount(0) * mPyramid.getRowCount(0);
+        final CountDownLatch done = new CountDownLatch(tiles);
+        final AtomicInteger decoded = new AtomicInteger();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final TileDecodeScheduler scheduler = new TileDecodeScheduler(poolSize,
+            new TileDecodeScheduler.Worker() {
+                @Override
+                public void decodeTile(Tile tile) {
+                    try {
+                        final BitmapFactory.Options options = new BitmapFactory.Options();
+                        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                        final Bitmap bitmap = decoder.decodeTile(tile, options);
+                        if (bitmap != null) {
+                            decoded.incrementAndGet();
+                            bitmap.recycle();
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Decoding " + tile.mRect + " failed", e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    terminated.countDown();
+                }
+            });
+        final int extent = mPyramid.getTileExtent(0);
+        scheduler.setViewport(IMAGE_WIDTH / 2f, IMAGE_HEIGHT / 2f, 0, extent);
+
+        final long start = System.nanoTime();
+        for (int row = 0; row < mPyramid.getRowCount(0); row++) {
+            for (int column = 0; column < mPyramid.getColumnCount(0); column++) {
+                scheduler.schedule(new Tile(mPyramid, 0, column, row));
+            }
+        }
+        assertTrue("Timed out", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final long elapsed = System.nanoTime() - start;
+
+        scheduler.shutdown();
+        terminated.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        decoder.recycle();
+        assertEquals(tiles, decoded.get());
+        return elapsed;
+    }
+
+    /**
+     * Writes a JPEG with gradients and noise, so it does not compress, and decode, unrealistically
+     * well. Held in RGB 565 to keep the heap use down.
+     */
+    private static void writeSyntheticJpeg(File file) throws IOException {
+        final Bitmap bitmap = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT,
+            Bitmap.Config.RGB_565);
+        final int[] row = new int[IMAGE_WIDTH];
+        int seed = 1;
+        for (int y = 0; y < IMAGE_HEIGHT; y++) {
+            for (int x = 0; x < IMAGE_WIDTH; x++) {
+                seed = seed * 1103515245 + 12345;
+                final int noise = (seed >>> 24) & 0x3f;
+                final int r = ((x * 255) / IMAGE_WIDTH + noise) & 0xff;
+                final int g = ((y * 255) / IMAGE_HEIGHT + noise) & 0xff;
+                final int b = (((x ^ y) >> 3) + noise) & 0xff;
+                row[x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+            bitmap.setPixels(row, 0, IMAGE_WIDTH, 0, y, IMAGE_WIDTH, 1);
+        }
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+    }
+}
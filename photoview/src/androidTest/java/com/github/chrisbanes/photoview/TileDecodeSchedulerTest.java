@@ -0,0 +1,102 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the order a single decode thread picks tiles in. Instrumented, as tiles are positioned
+ * with {@link android.graphics.Rect}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TileDecodeSchedulerTest {
+
+    private static final long TIMEOUT_SECONDS = 10L;
+
+    private final TilePyramid mPyramid = new TilePyramid(4096, 4096, 256);
+    private final ArrayList<Tile> mOrder = new ArrayList<>();
+    private final CountDownLatch mStarted = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final CountDownLatch mDone = new CountDownLatch(7);
+    private final CountDownLatch mTerminated = new CountDownLatch(1);
+
+    private final TileDecodeScheduler mScheduler = new TileDecodeScheduler(1,
+        new TileDecodeScheduler.Worker() {
+            @Override
+            public void decodeTile(Tile tile) {
+                mStarted.countDown();
+                try {
+                    // Holds the thread on the first tile until everything else is queued
+                    mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (mOrder) {
+                    mOrder.add(tile);
+                }
+                mDone.countDown();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                mTerminated.countDown();
+            }
+        });
+
+    @Test
+    public void picksByBaseLayerThenLevelAndDistanceThenPrefetch() throws InterruptedException {
+        // Viewport centered on tile (8, 8) of level 0
+        mScheduler.setViewport(8.5f * 256f, 8.5f * 256f, 0, 256);
+        final Tile blocker = new Tile(mPyramid, 0, 0, 15);
+        mScheduler.schedule(blocker);
+        assertTrue(mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final Tile far = new Tile(mPyramid, 0, 0, 0);
+        final Tile prefetch = new Tile(mPyramid, 0, 8, 9);
+        prefetch.mPrefetch = true;
+        final Tile otherLevel = new Tile(mPyramid, 1, 4, 4);
+        final Tile near = new Tile(mPyramid, 0, 9, 8);
+        final Tile center = new Tile(mPyramid, 0, 8, 8);
+        final Tile cancelled = new Tile(mPyramid, 0, 8, 7);
+        cancelled.mCancelled = true;
+        final Tile baseLayer = new Tile(mPyramid, mPyramid.getMaxLevel());
+        for (Tile tile : Arrays.asList(far, prefetch, otherLevel, near, center, cancelled,
+            baseLayer)) {
+            mScheduler.schedule(tile);
+        }
+        mRelease.countDown();
+        assertTrue(mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mScheduler.shutdown();
+        assertTrue(mTerminated.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // The cancelled tile is dropped without reaching the worker
+        synchronized (mOrder) {
+            assertEquals(Arrays.asList(blocker, baseLayer, center, near, far, otherLevel,
+                prefetch), mOrder);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.RectF;
+
+/**
+ * A 2D affine transform held in six primitive floats, laid out like the first two rows of
+ * {@link android.graphics.Matrix}:
+ * <pre>
+ * | scaleX skewX  transX |
+ * | skewY  scaleY transY |
+ * |   0      0      1    |
+ * </pre>
+ * All operations are plain Java, so nothing here crosses into native code and nothing allocates.
+ * Conversion to an android Matrix is left to the caller, through {@link #getValues(float[])}.
+ * <p>
+ * Every mutation that actually changes a value bumps {@link #getGeneration()}, so callers can
+ * cache anything derived from the transform and only recompute it when the generation moved.
+ * <p>
+ * The uniform scale and rotation of the transform are kept decomposed alongside the values.
+ * Translations, uniform scales and rotations update them incrementally; any other mutation
+ * marks them stale and the next {@link #getScale()} or {@link #getRotation()} recomputes them in
+ * closed form.
+ */
+final class AffineMatrix {
+
+    static final int SCALE_TO_FIT_FILL = 0;
+    static final int SCALE_TO_FIT_START = 1;
+    static final int SCALE_TO_FIT_CENTER = 2;
+    static final int SCALE_TO_FIT_END = 3;
+
+    // Same tolerance Skia uses to snap sin/cos, so that quarter turns stay exact
+    private static final float NEARLY_ZERO = 1f / (1 << 12);
+
+    private float mScaleX, mSkewX, mTransX;
+    private float mSkewY, mScaleY, mTransY;
+    private int mGeneration;
+
+    private float mScale;
+    private float mRotation;
+    private boolean mDecomposed;
+
+    AffineMatrix() {
+        reset();
+    }
+
+    /**
+     * @return a counter that changes whenever any value of this transform changes
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return the uniform scale of this transform, which is the length of its x basis vector
+     */
+    float getScale() {
+        if (!mDecomposed) {
+            decompose();
+        }
+        return mScale;
+    }
+
+    /**
+     * @return the rotation of this transform in degrees, in the range (-180, 180]
+     */
+    float getRotation() {
+        if (!mDecomposed) {
+            decompose();
+        }
+        return mRotation;
+    }
+
+    float getScaleX() {
+        return mScaleX;
+    }
+
+    float getSkewX() {
+        return mSkewX;
+    }
+
+    float getTransX() {
+        return mTransX;
+    }
+
+    float getSkewY() {
+        return mSkewY;
+    }
+
+    float getScaleY() {
+        return mScaleY;
+    }
+
+    float getTransY() {
+        return mTransY;
+    }
+
+    boolean isIdentity() {
+        return mScaleX == 1f && mSkewX == 0f && mTransX == 0f
+            && mSkewY == 0f && mScaleY == 1f && mTransY == 0f;
+    }
+
+    /**
+     * @return true if every value of this transform is within {@code epsilon} of {@code other}
+     */
+    boolean nearlyEquals(AffineMatrix other, float epsilon) {
+        return Math.abs(mScaleX - other.mScaleX) <= epsilon
+            && Math.abs(mSkewX - other.mSkewX) <= epsilon
+            && Math.abs(mTransX - other.mTransX) <= epsilon
+            && Math.abs(mSkewY - other.mSkewY) <= epsilon
+            && Math.abs(mScaleY - other.mScaleY) <= epsilon
+            && Math.abs(mTransY - other.mTransY) <= epsilon;
+    }
+
+    void reset() {
+        set(1f, 0f, 0f, 0f, 1f, 0f);
+        setDecomposition(1f, 0f);
+    }
+
+    void set(AffineMatrix src) {
+        set(src.mScaleX, src.mSkewX, src.mTransX, src.mSkewY, src.mScaleY, src.mTransY);
+        if (src.mDecomposed) {
+            setDecomposition(src.mScale, src.mRotation);
+        }
+    }
+
+    void set(float scaleX, float skewX, float transX, float skewY, float scaleY, float transY) {
+        if (mScaleX == scaleX && mSkewX == skewX && mTransX == transX
+            && mSkewY == skewY && mScaleY == scaleY && mTransY == transY) {
+            return;
+        }
+        mGeneration++;
+        mDecomposed = false;
+        mScaleX = scaleX;
+        mSkewX = skewX;
+        mTransX = transX;
+        mSkewY = skewY;
+        mScaleY = scaleY;
+        mTransY = transY;
+    }
+
+    /**
+     * Copies the affine part of a 3x3 value array, as filled by
+     * {@link android.graphics.Matrix#getValues(float[])}. Perspective values are ignored.
+     */
+    void setValues(float[] values) {
+        set(values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+    /**
+     * Writes this transform as a 3x3 value array, ready for
+     * {@link android.graphics.Matrix#setValues(float[])}.
+     */
+    void getValues(float[] values) {
+        values[0] = mScaleX;
+        values[1] = mSkewX;
+        values[2] = mTransX;
+        values[3] = mSkewY;
+        values[4] = mScaleY;
+        values[5] = mTransY;
+        values[6] = 0f;
+        values[7] = 0f;
+        values[8] = 1f;
+    }
+
+    void setTranslate(float dx, float dy) {
+        set(1f, 0f, dx, 0f, 1f, dy);
+        setDecomposition(1f, 0f);
+    }
+
+    void setScale(float sx, float sy) {
+        setScale(sx, sy, 0f, 0f);
+    }
+
+    void setScale(float sx, float sy, float px, float py) {
+        set(sx, 0f, px - sx * px, 0f, sy, py - sy * py);
+        if (sx == sy && sx > 0f) {
+            setDecomposition(sx, 0f);
+        }
+    }
+
+    void setRotate(float degrees) {
+        setRotate(degrees, 0f, 0f);
+    }
+
+    void setRotate(float degrees, float px, float py) {
+        final double radians = Math.toRadians(degrees);
+        final float sin = snapToZero((float) Math.sin(radians));
+        final float cos = snapToZero((float) Math.cos(radians));
+        set(cos, -sin, px - cos * px + sin * py,
+            sin, cos, py - sin * px - cos * py);
+        setDecomposition(1f, normalizeDegrees(degrees));
+    }
+
+    /**
+     * Sets this transform to a uniform scale, followed by a rotation around the origin, followed
+     * by a translation. The decomposed scale and rotation are taken as given.
+     */
+    void setSimilarity(float scale, float degrees, float transX, float transY) {
+        final double radians = Math.toRadians(degrees);
+        final float sin = snapToZero((float) Math.sin(radians)) * scale;
+        final float cos = snapToZero((float) Math.cos(radians)) * scale;
+        set(cos, -sin, transX, sin, cos, transY);
+        setDecomposition(scale, normalizeDegrees(degrees));
+    }
+
+    /**
+     * Sets this transform to map a {@code srcWidth x srcHeight} rectangle at the origin onto a
+     * {@code dstWidth x dstHeight} rectangle at the origin, following the semantics of
+     * {@link android.graphics.Matrix#setRectToRect}.
+     *
+     * @return false if the source rectangle is empty, in which case the transform is reset
+     */
+    boolean setRectToRect(float srcWidth, float srcHeight, float dstWidth, float dstHeight,
+        int scaleToFit) {
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            reset();
+            return false;
+        }
+        float sx = dstWidth / srcWidth;
+        float sy = dstHeight / srcHeight;
+        float tx = 0f, ty = 0f;
+        if (scaleToFit != SCALE_TO_FIT_FILL) {
+            final boolean xLarger = sx > sy;
+            if (xLarger) {
+                sx = sy;
+            } else {
+                sy = sx;
+            }
+            if (scaleToFit == SCALE_TO_FIT_CENTER || scaleToFit == SCALE_TO_FIT_END) {
+                float diff = xLarger ? dstWidth - srcWidth * sy : dstHeight - srcHeight * sy;
+                if (scaleToFit == SCALE_TO_FIT_CENTER) {
+                    diff = diff / 2;
+                }
+                if (xLarger) {
+                    tx += diff;
+                } else {
+                    ty += diff;
+                }
+            }
+        }
+        set(sx, 0f, tx, 0f, sy, ty);
+        return true;
+    }
+
+    void postTranslate(float dx, float dy) {
+        if (dx == 0f && dy == 0f) {
+            return;
+        }
+        mGeneration++;
+        mTransX += dx;
+        mTransY += dy;
+    }
+
+    void postScale(float sx, float sy) {
+        if (sx == 1f && sy == 1f) {
+            return;
+        }
+        mGeneration++;
+        postScaleDecomposition(sx, sy);
+        mScaleX *= sx;
+        mSkewX *= sx;
+        mTransX *= sx;
+        mSkewY *= sy;
+        mScaleY *= sy;
+        mTransY *= sy;
+    }
+
+    void postScale(float sx, float sy, float px, float py) {
+        if (sx == 1f && sy == 1f) {
+            return;
+        }
+        mGeneration++;
+        postScaleDecomposition(sx, sy);
+        mScaleX *= sx;
+        mSkewX *= sx;
+        mTransX = sx * (mTransX - px) + px;
+        mSkewY *= sy;
+        mScaleY *= sy;
+        mTransY = sy * (mTransY - py) + py;
+    }
+
+    void postRotate(float degrees) {
+        postRotate(degrees, 0f, 0f);
+    }
+
+    void postRotate(float degrees, float px, float py) {
+        final double radians = Math.toRadians(degrees);
+        final float sin = snapToZero((float) Math.sin(radians));
+        final float cos = snapToZero((float) Math.cos(radians));
+        final float scaleX = cos * mScaleX - sin * mSkewY;
+        final float skewX = cos * mSkewX - sin * mScaleY;
+        final float transX = cos * (mTransX - px) - sin * (mTransY - py) + px;
+        final float skewY = sin * mScaleX + cos * mSkewY;
+        final float scaleY = sin * mSkewX + cos * mScaleY;
+        final float transY = sin * (mTransX - px) + cos * (mTransY - py) + py;
+        final boolean decomposed = mDecomposed;
+        final float scale = mScale;
+        final float rotation = mRotation;
+        set(scaleX, skewX, transX, skewY, scaleY, transY);
+        if (decomposed) {
+            setDecomposition(scale, normalizeDegrees(rotation + degrees));
+        }
+    }
+
+    /**
+     * this = other * this
+     */
+    void postConcat(AffineMatrix other) {
+        setConcat(other, this);
+    }
+
+    /**
+     * this = this * other
+     */
+    void preConcat(AffineMatrix other) {
+        setConcat(this, other);
+    }
+
+    /**
+     * this = a * b. Either argument may be this instance.
+     */
+    void setConcat(AffineMatrix a, AffineMatrix b) {
+        final float scaleX = a.mScaleX * b.mScaleX + a.mSkewX * b.mSkewY;
+        final float skewX = a.mScaleX * b.mSkewX + a.mSkewX * b.mScaleY;
+        final float transX = a.mScaleX * b.mTransX + a.mSkewX * b.mTransY + a.mTransX;
+        final float skewY = a.mSkewY * b.mScaleX + a.mScaleY * b.mSkewY;
+        final float scaleY = a.mSkewY * b.mSkewX + a.mScaleY * b.mScaleY;
+        final float transY = a.mSkewY * b.mTransX + a.mScaleY * b.mTransY + a.mTransY;
+        set(scaleX, skewX, transX, skewY, scaleY, transY);
+    }
+
+    /**
+     * Writes the inverse of this transform into {@code inverse}, which may be this instance.
+     *
+     * @return false if this transform is not invertible, in which case {@code inverse} is untouched
+     */
+    boolean invert(AffineMatrix inverse) {
+        final float det = mScaleX * mScaleY - mSkewX * mSkewY;
+        if (det == 0f || Float.isNaN(det) || Float.isInfinite(det)) {
+            return false;
+        }
+        final float invDet = 1f / det;
+        final float scaleX = mScaleY * invDet;
+        final float skewX = -mSkewX * invDet;
+        final float transX = (mSkewX * mTransY - mScaleY * mTransX) * invDet;
+        final float skewY = -mSkewY * invDet;
+        final float scaleY = mScaleX * invDet;
+        final float transY = (mSkewY * mTransX - mScaleX * mTransY) * invDet;
+        inverse.set(scaleX, skewX, transX, skewY, scaleY, transY);
+        return true;
+    }
+
+    /**
+     * Maps {@code pointCount} (x, y) pairs from {@code src} into {@code dst}. The arrays may be the
+     * same.
+     */
+    void mapPoints(float[] dst, float[] src, int pointCount) {
+        for (int i = 0, n = pointCount * 2; i < n; i += 2) {
+            final float x = src[i];
+            final float y = src[i + 1];
+            dst[i] = mScaleX * x + mSkewX * y + mTransX;
+            dst[i + 1] = mSkewY * x + mScaleY * y + mTransY;
+        }
+    }
+
+    void mapPoints(float[] pts) {
+        mapPoints(pts, pts, pts.length / 2);
+    }
+
+    /**
+     * Maps the rectangle in place, storing the bounds of the transformed corners.
+     */
+    void mapRect(RectF rect) {
+        mapRect(rect, rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    /**
+     * Maps the rectangle given by the four edges, and stores the bounds of the transformed
+     * corners in {@code dst}. Only the public fields of {@code dst} are touched.
+     */
+    void mapRect(RectF dst, float left, float top, float right, float bottom) {
+        final float x0 = mScaleX * left, x1 = mScaleX * right;
+        final float y0 = mSkewX * top, y1 = mSkewX * bottom;
+        final float u0 = mSkewY * left, u1 = mSkewY * right;
+        final float v0 = mScaleY * top, v1 = mScaleY * bottom;
+        dst.left = Math.min(x0, x1) + Math.min(y0, y1) + mTransX;
+        dst.right = Math.max(x0, x1) + Math.max(y0, y1) + mTransX;
+        dst.top = Math.min(u0, u1) + Math.min(v0, v1) + mTransY;
+        dst.bottom = Math.max(u0, u1) + Math.max(v0, v1) + mTransY;
+    }
+
+    @Override
+    public String toString() {
+        return "AffineMatrix{[" + mScaleX + ", " + mSkewX + ", " + mTransX + "]["
+            + mSkewY + ", " + mScaleY + ", " + mTransY + "]}";
+    }
+
+    private void setDecomposition(float scale, float rotation) {
+        mScale = scale;
+        mRotation = rotation;
+        mDecomposed = true;
+    }
+
+    private void postScaleDecomposition(float sx, float sy) {
+        if (mDecomposed && sx == sy && sx > 0f) {
+            mScale *= sx;
+        } else {
+            mDecomposed = false;
+        }
+    }
+
+    private void decompose() {
+        mScale = (float) Math.sqrt(mScaleX * mScaleX + mSkewY * mSkewY);
+        mRotation = (float) Math.toDegrees(Math.atan2(mSkewY, mScaleX));
+        mDecomposed = true;
+    }
+
+    static float normalizeDegrees(float degrees) {
+        degrees %= 360f;
+        if (degrees > 180f) {
+            degrees -= 360f;
+        } else if (degrees <= -180f) {
+            degrees += 360f;
+        }
+        return degrees;
+    }
+
+    static float snapToZero(float value) {
+        return Math.abs(value) < NEARLY_ZERO ? 0f : value;
+    }
+}
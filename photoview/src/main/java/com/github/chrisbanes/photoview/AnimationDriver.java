@@ -0,0 +1,173 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+/**
+ * Drives every running animation of a {@link PhotoViewAttacher} from a single frame callback.
+ * <p>
+ * Each animation lives in a slot, so starting a new one replaces (and cancels) whatever was
+ * running in that slot. On every frame all slots are ticked with the same vsync frame time, and
+ * then the {@link Host} is told once, so it can apply the combined result to the view a single
+ * time. The frame source and the clock are injectable, so the whole thing can be driven by hand
+ * from a plain JVM test.
+ */
+final class AnimationDriver {
+
+    static final int SLOT_ZOOM = 0;
+    static final int SLOT_ROTATE = 1;
+    static final int SLOT_FLING = 2;
+    static final int SLOT_DRAG = 3;
+    private static final int SLOT_COUNT = 4;
+
+    /**
+     * Source of the current time, in the same time base as the frame times.
+     */
+    interface Clock {
+        long nanoTime();
+    }
+
+    interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    /**
+     * Delivers frame callbacks, normally once per vsync.
+     */
+    interface FrameScheduler {
+        void postFrameCallback(FrameCallback callback);
+
+        void removeFrameCallback(FrameCallback callback);
+    }
+
+    interface Host {
+        /**
+         * Called once per frame, after every running animation has been ticked.
+         */
+        void onAnimationFrame(long frameTimeNanos);
+    }
+
+    interface Animation {
+        /**
+         * Advance the animation to the given frame time.
+         *
+         * @return true if the animation wants another frame
+         */
+        boolean onFrame(long frameTimeNanos);
+
+        /**
+         * Called when the animation is cancelled or replaced before it finished by itself.
+         */
+        void onCancel();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final Animation[] mSlots = new Animation[SLOT_COUNT];
+    private final Clock mClock;
+    private final FrameScheduler mScheduler;
+    private final Host mHost;
+    private boolean mFramePending;
+
+    private final FrameCallback mFrameCallback = new FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFramePending = false;
+            AnimationDriver.this.doFrame(frameTimeNanos);
+        }
+    };
+
+    AnimationDriver(Clock clock, FrameScheduler scheduler, Host host) {
+        mClock = clock;
+        mScheduler = scheduler;
+        mHost = host;
+    }
+
+    long now() {
+        return mClock.nanoTime();
+    }
+
+    /**
+     * Start an animation in the given slot, cancelling whatever was running there.
+     */
+    void start(int slot, Animation animation) {
+        final Animation previous = mSlots[slot];
+        mSlots[slot] = animation;
+        if (previous != null && previous != animation) {
+            previous.onCancel();
+        }
+        requestFrame();
+    }
+
+    void cancel(int slot) {
+        final Animation animation = mSlots[slot];
+        if (animation != null) {
+            mSlots[slot] = null;
+            animation.onCancel();
+        }
+    }
+
+    void cancelAll() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            cancel(i);
+        }
+    }
+
+    boolean isRunning(int slot) {
+        return mSlots[slot] != null;
+    }
+
+    boolean isRunning() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (mSlots[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make sure the host gets a frame callback, even if nothing is animating.
+     */
+    void requestFrame() {
+        if (!mFramePending) {
+            mFramePending = true;
+            mScheduler.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Tick every running animation and notify the host. Exposed so tests can drive frames
+     * directly.
+     */
+    void doFrame(long frameTimeNanos) {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            final Animation animation = mSlots[i];
+            if (animation != null && !animation.onFrame(frameTimeNanos)
+                && mSlots[i] == animation) {
+                mSlots[i] = null;
+            }
+        }
+        mHost.onAnimationFrame(frameTimeNanos);
+        if (isRunning()) {
+            requestFrame();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * Byte-bounded pool of mutable bitmaps that no tile needs any more, handed out again as
+ * {@link android.graphics.BitmapFactory.Options#inBitmap} targets. {@link
+ * android.graphics.BitmapRegionDecoder} never resizes its target, so only exact size matches are
+ * returned. Safe to use from any thread.
+ */
+final class BitmapPool {
+
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<>();
+    private int mMaxBytes;
+    private int mBytes;
+
+    BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return a pooled bitmap of exactly this size and config, or null
+     */
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            final Bitmap bitmap = mBitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                && bitmap.getConfig() == config) {
+                mBitmaps.remove(i);
+                mBytes -= getBytes(bitmap);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes ownership of {@code bitmap}, either keeping it for reuse or recycling it
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        final int bytes = getBytes(bitmap);
+        if (!bitmap.isMutable() || bytes > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        mBitmaps.add(bitmap);
+        mBytes += bytes;
+        trimToSize(mMaxBytes);
+    }
+
+    synchronized void setMaxBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    synchronized void trimToSize(int maxBytes) {
+        // Oldest first
+        while (mBytes > maxBytes && !mBitmaps.isEmpty()) {
+            final Bitmap bitmap = mBitmaps.remove(0);
+            mBytes -= getBytes(bitmap);
+            bitmap.recycle();
+        }
+    }
+
+    void clear() {
+        trimToSize(0);
+    }
+
+    static int getBytes(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -18,22 +18,69 @@ package com.github.chrisbanes.photoview;
 import android.annotation.TargetApi;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
-import android.view.View;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
 
 class Compat {
 
     private static final int SIXTY_FPS_INTERVAL = 1000 / 60;
 
-    public static void postOnAnimation(View view, Runnable runnable) {
+    /**
+     * @return a frame scheduler backed by Choreographer where available, or by a 60fps Handler
+     * loop on older platforms. Frames are delivered on the main thread.
+     */
+    public static AnimationDriver.FrameScheduler newFrameScheduler() {
         if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
-            postOnAnimationJellyBean(view, runnable);
+            return new ChoreographerFrameScheduler();
         } else {
-            view.postDelayed(runnable, SIXTY_FPS_INTERVAL);
+            return new HandlerFrameScheduler();
         }
     }
 
     @TargetApi(16)
-    private static void postOnAnimationJellyBean(View view, Runnable runnable) {
-        view.postOnAnimation(runnable);
+    private static class ChoreographerFrameScheduler implements AnimationDriver.FrameScheduler,
+        Choreographer.FrameCallback {
+
+        private AnimationDriver.FrameCallback mCallback;
+
+        @Override
+        public void postFrameCallback(AnimationDriver.FrameCallback callback) {
+            mCallback = callback;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void removeFrameCallback(AnimationDriver.FrameCallback callback) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mCallback.doFrame(frameTimeNanos);
+        }
+    }
+
+    private static class HandlerFrameScheduler implements AnimationDriver.FrameScheduler,
+        Runnable {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private AnimationDriver.FrameCallback mCallback;
+
+        @Override
+        public void postFrameCallback(AnimationDriver.FrameCallback callback) {
+            mCallback = callback;
+            mHandler.postDelayed(this, SIXTY_FPS_INTERVAL);
+        }
+
+        @Override
+        public void removeFrameCallback(AnimationDriver.FrameCallback callback) {
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            mCallback.doFrame(System.nanoTime());
+        }
     }
 }
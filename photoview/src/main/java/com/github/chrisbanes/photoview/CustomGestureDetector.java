@@ -17,22 +17,32 @@ package com.github.chrisbanes.photoview;
 
 import android.content.Context;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
-import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 
 /**
  * Does a whole lot of gesture detecting.
+ * <p>
+ * A single pointer drags. With more pointers down, one pass over them per event gives the
+ * movement of their centroid, the change of their span and the turn of the line through the first
+ * two, which go out together as a single {@link OnGestureListener#onTransform transform}.
+ * <p>
+ * Holding down the second tap of a double tap and dragging it up or down quick scales: the image
+ * zooms about where the tap landed, in when dragging down and out when dragging up, through the
+ * same transform callback.
  */
 class CustomGestureDetector {
 
     private static final int INVALID_POINTER_ID = -1;
+    // Turning this far starts a transform, when rotation is enabled
+    private static final float ROTATION_SLOP_DEGREES = 5f;
+    // Every touch slop of vertical movement during a quick scale scales by this much
+    private static final float QUICK_SCALE_PER_SLOP = 1.1f;
+    private static final long NO_TAP = Long.MIN_VALUE;
 
     private int mActivePointerId = INVALID_POINTER_ID;
-    private int mActivePointerIndex = 0;
-    private final ScaleGestureDetector mDetector;
 
-    private VelocityTracker mVelocityTracker;
+    // Reused for every gesture
+    private final VelocityEstimator mVelocityEstimator = new VelocityEstimator();
     private boolean mIsDragging;
     private float mLastTouchX;
     private float mLastTouchY;
@@ -40,74 +50,364 @@ class CustomGestureDetector {
     private final float mMinimumVelocity;
     private OnGestureListener mListener;
 
+    // Multi-pointer transform. The last values only move on once the transform started, so until
+    // then they hold where the pointers were when they last changed.
+    private boolean mIsTransforming;
+    private boolean mMultiPointer;
+    private boolean mRotationEnabled;
+    private float mLastFocusX, mLastFocusY, mLastSpan, mLastAngle;
+    // Written by measure()
+    private float mFocusX, mFocusY, mSpan, mAngle;
+
+    // Drags follow the finger's resampled position at frame time, null unless enabled
+    private TouchResampler mResampler;
+    // New samples arrived since the last flushResampledDrag()
+    private boolean mResampledDragPending;
+
+    // Quick scale
+    private final long mDoubleTapTimeout;
+    // Held longer than this, a touch is a long press rather than a tap
+    private final long mLongPressTimeout;
+    private final float mDoubleTapSlop;
+    private boolean mQuickScaleEnabled = true;
+    // Whether the gesture so far could be the first tap of a double tap
+    private boolean mTapCandidate;
+    private float mDownX, mDownY;
+    // Where and when the last tap lifted, or NO_TAP
+    private long mLastTapUpTime = NO_TAP;
+    private float mLastTapX, mLastTapY;
+    // The gesture is the second tap of a double tap, and may still turn into a quick scale
+    private boolean mQuickScaleArmed;
+    private boolean mIsQuickScaling;
+    private float mQuickScaleLastY;
+    // The current or last gesture did more than tap
+    private boolean mDoubleTapConsumed;
+
     CustomGestureDetector(Context context, OnGestureListener listener) {
         final ViewConfiguration configuration = ViewConfiguration
                 .get(context);
         mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
         mTouchSlop = configuration.getScaledTouchSlop();
+        mDoubleTapSlop = configuration.getScaledDoubleTapSlop();
+        mDoubleTapTimeout = ViewConfiguration.getDoubleTapTimeout();
+        mLongPressTimeout = ViewConfiguration.getLongPressTimeout();
 
         mListener = listener;
-        ScaleGestureDetector.OnScaleGestureListener mScaleListener = new ScaleGestureDetector.OnScaleGestureListener() {
-
-            @Override
-            public boolean onScale(ScaleGestureDetector detector) {
-                float scaleFactor = detector.getScaleFactor();
-
-                if (Float.isNaN(scaleFactor) || Float.isInfinite(scaleFactor))
-                    return false;
-             
-                if (scaleFactor >= 0) {
-                    mListener.onScale(scaleFactor,
-                            detector.getFocusX(), detector.getFocusY());
-                }
-                return true;
+    }
+
+    /**
+     * @param enabled whether turning two pointers rotates, off by default
+     */
+    void setRotationEnabled(boolean enabled) {
+        mRotationEnabled = enabled;
+    }
+
+    boolean isRotationEnabled() {
+        return mRotationEnabled;
+    }
+
+    /**
+     * @param enabled whether holding down the second tap of a double tap and dragging zooms, on
+     *                by default
+     */
+    void setQuickScaleEnabled(boolean enabled) {
+        mQuickScaleEnabled = enabled;
+        if (!enabled) {
+            mQuickScaleArmed = false;
+            mIsQuickScaling = false;
+        }
+    }
+
+    boolean isQuickScaleEnabled() {
+        return mQuickScaleEnabled;
+    }
+
+    /**
+     * @return whether the second tap of the current or last double tap turned into a quick scale,
+     * a drag or a pinch, rather than staying a tap
+     */
+    boolean isDoubleTapConsumed() {
+        return mDoubleTapConsumed;
+    }
+
+    /**
+     * @param enabled whether drags are held back for {@link #flushResampledDrag} instead of being
+     *                sent on every move event
+     */
+    void setResamplingEnabled(boolean enabled) {
+        if (enabled == (mResampler != null)) {
+            return;
+        }
+        if (enabled) {
+            // A drag in progress is fed from its next move event on, before it is flushed
+            mResampler = new TouchResampler();
+        } else {
+            mResampler = null;
+            mResampledDragPending = false;
+        }
+    }
+
+    boolean isResamplingEnabled() {
+        return mResampler != null;
+    }
+
+    /**
+     * @return whether a drag is waiting for {@link #flushResampledDrag}
+     */
+    boolean hasResampledDrag() {
+        return mResampledDragPending;
+    }
+
+    /**
+     * Drags to where the active pointer is estimated to be at a frame's time
+     *
+     * @return whether the drag went to a predicted position, which needs another frame to settle
+     * once the pointer stops
+     */
+    boolean flushResampledDrag(long frameTimeMillis) {
+        if (mResampler == null || !mIsDragging || mMultiPointer) {
+            // Several pointers move the image through transforms instead
+            return false;
+        }
+        mResampledDragPending = false;
+        final boolean predicted = mResampler.resample(frameTimeMillis);
+        final float x = mResampler.getX();
+        final float y = mResampler.getY();
+        if (x != mLastTouchX || y != mLastTouchY) {
+            mListener.onDrag(x - mLastTouchX, y - mLastTouchY);
+            mLastTouchX = x;
+            mLastTouchY = y;
+        }
+        return predicted;
+    }
+
+    /**
+     * Starts resampling over from the active pointer's latest position
+     */
+    private void resetResampler(long timeMillis) {
+        if (mResampler != null) {
+            mResampler.reset();
+            mResampler.addSample(timeMillis, mLastTouchX, mLastTouchY);
+            mResampledDragPending = false;
+        }
+    }
+
+    /**
+     * Looks up the active pointer once per event. If the event does not contain it, which happens
+     * when events were missed, the first pointer takes over from where it is, so nothing jumps.
+     *
+     * @return index of the active pointer in {@code ev}
+     */
+    private int getActivePointerIndex(MotionEvent ev) {
+        final int index = ev.findPointerIndex(mActivePointerId);
+        if (index >= 0) {
+            return index;
+        }
+        mActivePointerId = ev.getPointerId(0);
+        mLastTouchX = ev.getX(0);
+        mLastTouchY = ev.getY(0);
+        // The samples so far belong to another pointer
+        mVelocityEstimator.clear();
+        resetResampler(ev.getEventTime());
+        return 0;
+    }
+
+    /**
+     * Feeds every sample of a pointer in this event, batched ones first, to the velocity estimator
+     */
+    private void addVelocitySamples(MotionEvent ev, int index) {
+        for (int i = 0, size = ev.getHistorySize(); i < size; i++) {
+            final long time = ev.getHistoricalEventTime(i);
+            final float x = ev.getHistoricalX(index, i), y = ev.getHistoricalY(index, i);
+            mVelocityEstimator.addSample(time, x, y);
+            if (mResampler != null) {
+                mResampler.addSample(time, x, y);
             }
+        }
+        mVelocityEstimator.addSample(ev.getEventTime(), ev.getX(index), ev.getY(index));
+        if (mResampler != null) {
+            mResampler.addSample(ev.getEventTime(), ev.getX(index), ev.getY(index));
+        }
+    }
 
-            @Override
-            public boolean onScaleBegin(ScaleGestureDetector detector) {
+    /**
+     * @return whether any sample of the active pointer in this event, batched ones included, is
+     * at least the touch slop away from where the drag would start
+     */
+    private boolean exceedsTouchSlop(MotionEvent ev, int index) {
+        for (int i = 0, size = ev.getHistorySize(); i < size; i++) {
+            if (exceedsTouchSlop(ev.getHistoricalX(index, i), ev.getHistoricalY(index, i))) {
                 return true;
             }
+        }
+        return exceedsTouchSlop(ev.getX(index), ev.getY(index));
+    }
+
+    private boolean exceedsTouchSlop(float x, float y) {
+        final float dx = x - mLastTouchX, dy = y - mLastTouchY;
+        // Compare squares rather than taking a square root for every sample
+        return (dx * dx) + (dy * dy) >= mTouchSlop * mTouchSlop;
+    }
 
-            @Override
-            public void onScaleEnd(ScaleGestureDetector detector) {
-                // NO-OP
+    /**
+     * Measures the pointers in this event, all in one loop, into mFocusX, mFocusY, mSpan and
+     * mAngle
+     *
+     * @param skipIndex index of a pointer that is going up, or -1
+     * @return how many pointers were measured
+     */
+    private int measure(MotionEvent ev, int skipIndex) {
+        double sumX = 0, sumY = 0, sumSquares = 0;
+        float firstX = 0f, firstY = 0f, secondX = 0f, secondY = 0f;
+        int count = 0;
+        for (int i = 0, size = ev.getPointerCount(); i < size; i++) {
+            if (i == skipIndex) {
+                continue;
             }
-        };
-        mDetector = new ScaleGestureDetector(context, mScaleListener);
+            final float x = ev.getX(i);
+            final float y = ev.getY(i);
+            if (count == 0) {
+                firstX = x;
+                firstY = y;
+            } else if (count == 1) {
+                secondX = x;
+                secondY = y;
+            }
+            sumX += x;
+            sumY += y;
+            sumSquares += (double) x * x + (double) y * y;
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final double focusX = sumX / count, focusY = sumY / count;
+        // Twice the root mean square distance from the centroid, which for two pointers is the
+        // distance between them
+        final double variance = sumSquares / count - focusX * focusX - focusY * focusY;
+        mFocusX = (float) focusX;
+        mFocusY = (float) focusY;
+        mSpan = (float) (2 * Math.sqrt(Math.max(variance, 0)));
+        mAngle = count < 2 ? 0f
+            : (float) Math.toDegrees(Math.atan2(secondY - firstY, secondX - firstX));
+        return count;
+    }
+
+    /**
+     * Starts measuring the transform from where the pointers are now, after they changed
+     */
+    private void resetTransform(MotionEvent ev, int skipIndex) {
+        mMultiPointer = measure(ev, skipIndex) >= 2;
+        if (!mMultiPointer) {
+            if (mIsTransforming) {
+                // The pointer that is left drags on without waiting for the slop
+                mIsTransforming = false;
+                mIsDragging = true;
+            }
+            return;
+        }
+        mLastFocusX = mFocusX;
+        mLastFocusY = mFocusY;
+        mLastSpan = mSpan;
+        mLastAngle = mAngle;
+    }
+
+    /**
+     * Sends the change since the last transform, or since the pointers changed if no transform
+     * started yet and the change is beyond the slop
+     */
+    private void processTransform(MotionEvent ev) {
+        measure(ev, -1);
+        final float dx = mFocusX - mLastFocusX, dy = mFocusY - mLastFocusY;
+        final float degrees = mRotationEnabled ? normalizeDegrees(mAngle - mLastAngle) : 0f;
+        if (!mIsTransforming) {
+            mIsTransforming = Math.abs(mSpan - mLastSpan) >= 2 * mTouchSlop
+                || (dx * dx) + (dy * dy) >= mTouchSlop * mTouchSlop
+                || Math.abs(degrees) >= ROTATION_SLOP_DEGREES;
+            if (!mIsTransforming) {
+                return;
+            }
+        }
+        // Pointers very close together would make the ratio jumpy
+        final float scaleFactor = mLastSpan >= mTouchSlop && mSpan >= mTouchSlop
+            ? mSpan / mLastSpan : 1f;
+        mLastFocusX = mFocusX;
+        mLastFocusY = mFocusY;
+        mLastSpan = mSpan;
+        mLastAngle = mAngle;
+        mListener.onTransform(dx, dy, scaleFactor, degrees, mFocusX, mFocusY);
+    }
+
+    /**
+     * @return whether a down event lands close enough, and soon enough, after the last tap to be
+     * the second tap of a double tap
+     */
+    private boolean isSecondTap(MotionEvent ev) {
+        if (mLastTapUpTime == NO_TAP || ev.getEventTime() - mLastTapUpTime > mDoubleTapTimeout) {
+            return false;
+        }
+        final float dx = ev.getX(0) - mLastTapX, dy = ev.getY(0) - mLastTapY;
+        return (dx * dx) + (dy * dy) < mDoubleTapSlop * mDoubleTapSlop;
     }
 
-    private float getActiveX(MotionEvent ev) {
-        try {
-            return ev.getX(mActivePointerIndex);
-        } catch (Exception e) {
-            return ev.getX();
+    /**
+     * Quick scales once the second tap of a double tap moves beyond the slop, mostly vertically
+     *
+     * @return false if the pointer moved sideways instead, so the gesture drags after all
+     */
+    private boolean processQuickScale(MotionEvent ev, int index) {
+        final float y = ev.getY(index);
+        if (!mIsQuickScaling) {
+            final float dx = ev.getX(index) - mDownX, dy = y - mDownY;
+            if ((dx * dx) + (dy * dy) < mTouchSlop * mTouchSlop) {
+                return true;
+            }
+            mDoubleTapConsumed = true;
+            if (Math.abs(dy) < Math.abs(dx)) {
+                mQuickScaleArmed = false;
+                return false;
+            }
+            mIsQuickScaling = true;
+            // The first scale carries the whole movement since the tap
+            mQuickScaleLastY = mDownY;
         }
+        final float scaleFactor = (float) Math.pow(QUICK_SCALE_PER_SLOP,
+            (y - mQuickScaleLastY) / mTouchSlop);
+        mQuickScaleLastY = y;
+        mListener.onTransform(0f, 0f, scaleFactor, 0f, mDownX, mDownY);
+        return true;
     }
 
-    private float getActiveY(MotionEvent ev) {
-        try {
-            return ev.getY(mActivePointerIndex);
-        } catch (Exception e) {
-            return ev.getY();
+    private static float normalizeDegrees(float degrees) {
+        if (degrees > 180f) {
+            return degrees - 360f;
+        }
+        if (degrees <= -180f) {
+            return degrees + 360f;
         }
+        return degrees;
     }
 
-    public boolean isScaling() {
-        return mDetector.isInProgress();
+    /**
+     * @return whether more than one pointer is moving the image
+     */
+    public boolean isTransforming() {
+        return mIsTransforming;
     }
 
     public boolean isDragging() {
         return mIsDragging;
     }
 
+    /**
+     * @return whether a double tap's second tap is being dragged to zoom
+     */
+    public boolean isQuickScaling() {
+        return mIsQuickScaling;
+    }
+
     public boolean onTouchEvent(MotionEvent ev) {
-        try {
-            mDetector.onTouchEvent(ev);
-            return processTouchEvent(ev);
-        } catch (IllegalArgumentException e) {
-            // Fix for support lib bug, happening when onDestroy is called
-            return true;
-        }
+        return processTouchEvent(ev);
     }
 
     private boolean processTouchEvent(MotionEvent ev) {
@@ -116,75 +416,139 @@ class CustomGestureDetector {
             case MotionEvent.ACTION_DOWN:
                 mActivePointerId = ev.getPointerId(0);
 
-                mVelocityTracker = VelocityTracker.obtain();
-                if (null != mVelocityTracker) {
-                    mVelocityTracker.addMovement(ev);
-                }
+                mVelocityEstimator.clear();
+                addVelocitySamples(ev, 0);
 
-                mLastTouchX = getActiveX(ev);
-                mLastTouchY = getActiveY(ev);
+                mLastTouchX = ev.getX(0);
+                mLastTouchY = ev.getY(0);
                 mIsDragging = false;
+                mIsTransforming = false;
+                mMultiPointer = false;
+                resetResampler(ev.getEventTime());
+
+                mDownX = mLastTouchX;
+                mDownY = mLastTouchY;
+                mQuickScaleArmed = mQuickScaleEnabled && isSecondTap(ev);
+                mIsQuickScaling = false;
+                mDoubleTapConsumed = false;
+                // The second tap of a double tap does not start another one
+                mTapCandidate = !mQuickScaleArmed;
                 break;
-            case MotionEvent.ACTION_MOVE:
-                final float x = getActiveX(ev);
-                final float y = getActiveY(ev);
-                final float dx = x - mLastTouchX, dy = y - mLastTouchY;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Pinching takes over from the quick scale
+                mQuickScaleArmed = false;
+                mIsQuickScaling = false;
+                mDoubleTapConsumed = true;
+                mTapCandidate = false;
+                resetTransform(ev, -1);
+                break;
+            case MotionEvent.ACTION_MOVE: {
+                final int index = getActivePointerIndex(ev);
+                // Including the samples before the slop is crossed, so the velocity reflects the
+                // whole movement
+                addVelocitySamples(ev, index);
+
+                if (ev.getPointerCount() > 1) {
+                    // Panning is part of the transform
+                    processTransform(ev);
+                    // A drag picks up from here once the other pointers lift
+                    mLastTouchX = ev.getX(index);
+                    mLastTouchY = ev.getY(index);
+                    break;
+                }
+
+                if (mQuickScaleArmed && processQuickScale(ev, index)) {
+                    break;
+                }
 
                 if (!mIsDragging) {
-                    // Use Pythagoras to see if drag length is larger than
-                    // touch slop
-                    mIsDragging = Math.sqrt((dx * dx) + (dy * dy)) >= mTouchSlop;
+                    mIsDragging = exceedsTouchSlop(ev, index);
                 }
 
-                if (mIsDragging) {
-                    mListener.onDrag(dx, dy);
+                if (mIsDragging && mResampler != null) {
+                    // Sent at the next frame, for where the finger is by then
+                    mResampledDragPending = true;
+                } else if (mIsDragging) {
+                    // One drag for the whole batch, however many samples it holds
+                    final float x = ev.getX(index);
+                    final float y = ev.getY(index);
+                    mListener.onDrag(x - mLastTouchX, y - mLastTouchY);
                     mLastTouchX = x;
                     mLastTouchY = y;
-
-                    if (null != mVelocityTracker) {
-                        mVelocityTracker.addMovement(ev);
-                    }
                 }
                 break;
+            }
             case MotionEvent.ACTION_CANCEL:
+                // Forget the whole gesture, as ACTION_DOWN would, so nothing of it leaks into a
+                // pending resampled drag or the next gesture
                 mActivePointerId = INVALID_POINTER_ID;
-                // Recycle Velocity Tracker
-                if (null != mVelocityTracker) {
-                    mVelocityTracker.recycle();
-                    mVelocityTracker = null;
+                mIsDragging = false;
+                mIsTransforming = false;
+                mMultiPointer = false;
+                mVelocityEstimator.clear();
+                if (mResampler != null) {
+                    mResampler.reset();
                 }
+                mResampledDragPending = false;
+                mQuickScaleArmed = false;
+                mIsQuickScaling = false;
+                mLastTapUpTime = NO_TAP;
                 break;
             case MotionEvent.ACTION_UP:
-                mActivePointerId = INVALID_POINTER_ID;
                 if (mIsDragging) {
-                    if (null != mVelocityTracker) {
-                        mLastTouchX = getActiveX(ev);
-                        mLastTouchY = getActiveY(ev);
-
-                        // Compute velocity within the last 1000ms
-                        mVelocityTracker.addMovement(ev);
-                        mVelocityTracker.computeCurrentVelocity(1000);
-
-                        final float vX = mVelocityTracker.getXVelocity(), vY = mVelocityTracker
-                                .getYVelocity();
-
-                        // If the velocity is greater than minVelocity, call
-                        // listener
-                        if (Math.max(Math.abs(vX), Math.abs(vY)) >= mMinimumVelocity) {
-                            mListener.onFling(mLastTouchX, mLastTouchY, -vX,
-                                    -vY);
-                        }
+                    final int index = getActivePointerIndex(ev);
+                    if (mResampler != null) {
+                        // End exactly under the finger, whatever was predicted
+                        mListener.onDrag(ev.getX(index) - mLastTouchX,
+                            ev.getY(index) - mLastTouchY);
+                        mResampledDragPending = false;
+                    }
+                    mLastTouchX = ev.getX(index);
+                    mLastTouchY = ev.getY(index);
+
+                    // The up event repeats the last position, so it only tells whether the
+                    // pointer paused before lifting
+                    mVelocityEstimator.computeVelocity(ev.getEventTime());
+
+                    final float vX = mVelocityEstimator.getVelocityX(), vY = mVelocityEstimator
+                            .getVelocityY();
+
+                    // If the velocity is greater than minVelocity, call
+                    // listener
+                    if (Math.max(Math.abs(vX), Math.abs(vY)) >= mMinimumVelocity) {
+                        mListener.onFling(mLastTouchX, mLastTouchY, -vX,
+                                -vY);
                     }
                 }
 
-                // Recycle Velocity Tracker
-                if (null != mVelocityTracker) {
-                    mVelocityTracker.recycle();
-                    mVelocityTracker = null;
+                if (mIsDragging) {
+                    mDoubleTapConsumed = true;
+                }
+                if (mTapCandidate && !mIsDragging
+                    && ev.getEventTime() - ev.getDownTime() < mLongPressTimeout) {
+                    mLastTapUpTime = ev.getEventTime();
+                    mLastTapX = mDownX;
+                    mLastTapY = mDownY;
+                } else {
+                    mLastTapUpTime = NO_TAP;
                 }
+
+                mActivePointerId = INVALID_POINTER_ID;
+                // The drag ended exactly under the finger, so a frame that is still due must not
+                // flush a prediction past it
+                mIsDragging = false;
+                if (mResampler != null) {
+                    mResampler.reset();
+                }
+                mResampledDragPending = false;
+                mIsTransforming = false;
+                mQuickScaleArmed = false;
+                mIsQuickScaling = false;
+                mVelocityEstimator.clear();
                 break;
             case MotionEvent.ACTION_POINTER_UP:
                 final int pointerIndex = Util.getPointerIndex(ev.getAction());
+                resetTransform(ev, pointerIndex);
                 final int pointerId = ev.getPointerId(pointerIndex);
                 if (pointerId == mActivePointerId) {
                     // This was our active pointer going up. Choose a new
@@ -193,13 +557,13 @@ class CustomGestureDetector {
                     mActivePointerId = ev.getPointerId(newPointerIndex);
                     mLastTouchX = ev.getX(newPointerIndex);
                     mLastTouchY = ev.getY(newPointerIndex);
+                    // Start the velocity over from the new pointer
+                    mVelocityEstimator.clear();
+                    mVelocityEstimator.addSample(ev.getEventTime(), mLastTouchX, mLastTouchY);
+                    resetResampler(ev.getEventTime());
                 }
                 break;
         }
-
-        mActivePointerIndex = ev
-                .findPointerIndex(mActivePointerId != INVALID_POINTER_ID ? mActivePointerId
-                        : 0);
         return true;
     }
 }
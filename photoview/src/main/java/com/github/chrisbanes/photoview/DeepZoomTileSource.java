@@ -0,0 +1,79 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link TileSource} for a DeepZoom (DZI) image on a web server. The constructor takes the values
+ * of the {@code .dzi} descriptor, and the tiles are read from the {@code _files} folder next to it.
+ * <p>
+ * DeepZoom numbers its levels the other way round, from a single pixel up to full resolution, and
+ * pads tiles with pixels of their neighbors; both are taken care of here.
+ */
+public final class DeepZoomTileSource extends UrlTileSource {
+
+    private final String mTilesUrl;
+    private final String mFormat;
+    private final int mOverlap;
+    // DeepZoom level of the full resolution image
+    private final int mMaxDeepZoomLevel;
+
+    /**
+     * @param tilesUrl URL of the tiles folder, such as {@code https://example.com/image_files/}
+     * @param format   file extension of the tiles, the descriptor's {@code Format}
+     * @param width    the descriptor's {@code Size Width}
+     * @param height   the descriptor's {@code Size Height}
+     * @param tileSize the descriptor's {@code TileSize}
+     * @param overlap  the descriptor's {@code Overlap}
+     */
+    public DeepZoomTileSource(@NonNull String tilesUrl, @NonNull String format, int width,
+                              int height, int tileSize, int overlap) {
+        super(width, height, tileSize);
+        mTilesUrl = tilesUrl.endsWith("/") ? tilesUrl : tilesUrl + '/';
+        mFormat = format;
+        mOverlap = overlap;
+        int level = 0;
+        while ((1L << level) < Math.max(width, height)) {
+            level++;
+        }
+        mMaxDeepZoomLevel = level;
+    }
+
+    @NonNull
+    @Override
+    protected String getTileUrl(int level, int column, int row) {
+        return mTilesUrl + (mMaxDeepZoomLevel - level) + '/' + column + '_' + row + '.' + mFormat;
+    }
+
+    @Override
+    protected Rect getTileCrop(int level, int column, int row) {
+        if (mOverlap == 0) {
+            return null;
+        }
+        // Every tile but those in the first column and row starts with the overlap
+        final int left = column > 0 ? mOverlap : 0;
+        final int top = row > 0 ? mOverlap : 0;
+        final int levelWidth = (getWidth() + (1 << level) - 1) >> level;
+        final int levelHeight = (getHeight() + (1 << level) - 1) >> level;
+        final int tileSize = getTileSize();
+        return new Rect(left, top,
+            left + Math.min(tileSize, levelWidth - column * tileSize),
+            top + Math.min(tileSize, levelHeight - row * tileSize));
+    }
+}
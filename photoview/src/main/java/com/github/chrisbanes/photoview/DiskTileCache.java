@@ -0,0 +1,298 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of decoded tiles on disk, so an image that was viewed before does not
+ * have to be decoded again. Tiles are stored as raw pixels and read back through a memory mapping
+ * straight into the bitmap, which is much cheaper than decoding JPEG or PNG.
+ * <p>
+ * Entries are keyed by the source file's path, size and modification time along with the tile's
+ * level and position, so a changed file never hits stale tiles; those simply age out. Each entry
+ * is written to a temporary file, flushed and then renamed, so a crash leaves either a complete
+ * entry or none. Only files named like entries are ever listed or deleted, so the directory may
+ * hold other files too. Pass the same instance to every {@link PhotoView#setTiledImage(String,
+ * DiskTileCache)} call that uses its directory, as the size is only tracked per instance. Safe to
+ * use from any thread.
+ */
+public final class DiskTileCache {
+
+    private static final int MAGIC = 0x50565443;
+    private static final int HEADER_BYTES = 3 * 4;
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Starts the name of every file the cache writes, so it leaves everything else alone
+    private static final String FILE_PREFIX = "tile-";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    // Entry name to size in bytes, access ordered so iteration starts at the least recently used
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes;
+    private boolean mIndexLoaded;
+
+    /**
+     * @param directory where to keep the tiles, such as a folder in
+     *                  {@link android.content.Context#getCacheDir()}; created if missing
+     * @param maxBytes  how much disk space the tiles may take up
+     */
+    public DiskTileCache(@NonNull File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @return the disk space currently taken up by cached tiles
+     */
+    public synchronized long getBytes() {
+        loadIndex();
+        return mBytes;
+    }
+
+    /**
+     * Deletes every cached tile
+     */
+    public synchronized void clear() {
+        loadIndex();
+        trimToSize(0L);
+    }
+
+    /**
+     * @param source   the image file the tiles are decoded from
+     * @param tileSize tile size of the pyramid, as it changes what a tile position covers
+     * @return a prefix for the entry names of one version of an image
+     */
+    static String getSourceKey(File source, int tileSize) {
+        final String identity = source.getAbsolutePath() + '\n' + source.length() + '\n'
+            + source.lastModified() + '\n' + tileSize;
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+                identity.getBytes("UTF-8"));
+            final StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Both are always available on Android
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a cached tile. Runs on a decode thread.
+     *
+     * @param name     entry name
+     * @param inBitmap mutable bitmap to read into if it has the right size, may be null
+     * @return the tile, which is {@code inBitmap} if that was used, or null if it is not cached
+     */
+    Bitmap get(String name, Bitmap inBitmap) {
+        final File file = getFile(name);
+        synchronized (this) {
+            loadIndex();
+            if (mEntries.get(name) == null) {
+                return null;
+            }
+        }
+        // Keeps the order across restarts, the file system might not support it though
+        file.setLastModified(System.currentTimeMillis());
+        // Mapped outside the lock, so trimToSize() or put() on another thread may delete or
+        // replace the file at any point. That is only safe because of Linux unlink semantics:
+        // deleting or renaming over a file removes its name, but a file that is already open or
+        // mapped stays readable until it is closed and unmapped, and one that is gone before it
+        // was opened fails to open below. A file system that freed the data on delete would need
+        // the read done under the lock.
+        final MappedByteBuffer buffer;
+        try {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            // Evicted in the meantime
+            return null;
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            remove(name);
+            return null;
+        }
+        final int width = buffer.getInt(4);
+        final int height = buffer.getInt(8);
+        if (width <= 0 || height <= 0
+            || buffer.capacity() != HEADER_BYTES + (long) width * height * 4) {
+            remove(name);
+            return null;
+        }
+        final Bitmap bitmap;
+        if (inBitmap != null && inBitmap.isMutable() && inBitmap.getWidth() == width
+            && inBitmap.getHeight() == height && inBitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+            bitmap = inBitmap;
+        } else {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        buffer.position(HEADER_BYTES);
+        bitmap.copyPixelsFromBuffer(buffer.slice());
+        return bitmap;
+    }
+
+    /**
+     * Writes a tile, evicting the least recently used tiles if that goes over the size. Runs on a
+     * decode thread.
+     *
+     * @param name   entry name
+     * @param bitmap an {@link Bitmap.Config#ARGB_8888} tile; other configs are not cached
+     */
+    void put(String name, Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+        final long size = HEADER_BYTES + (long) bitmap.getWidth() * bitmap.getHeight() * 4;
+        if (size > mMaxBytes || (!mDirectory.isDirectory() && !mDirectory.mkdirs())) {
+            return;
+        }
+        final File file = getFile(name);
+        // Unique per thread, so concurrent writes of the same tile do not mix
+        final File temp = new File(mDirectory, FILE_PREFIX + name + '.'
+            + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(temp, "rw");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    size);
+                buffer.putInt(MAGIC);
+                buffer.putInt(bitmap.getWidth());
+                buffer.putInt(bitmap.getHeight());
+                bitmap.copyPixelsToBuffer(buffer);
+                buffer.force();
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Out of space or a bitmap that was recycled; the cache is only an optimization
+            temp.delete();
+            return;
+        }
+        synchronized (this) {
+            loadIndex();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            final Long previous = mEntries.put(name, size);
+            if (previous != null) {
+                mBytes -= previous;
+            }
+            mBytes += size;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    private synchronized void remove(String name) {
+        final Long size = mEntries.remove(name);
+        if (size != null) {
+            mBytes -= size;
+        }
+        getFile(name).delete();
+    }
+
+    private File getFile(String name) {
+        return new File(mDirectory, FILE_PREFIX + name);
+    }
+
+    private void trimToSize(long maxBytes) {
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            mBytes -= entry.getValue();
+            getFile(entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * Rebuilds the LRU order from the modification times on first use, so the directory is only
+     * listed on a decode thread
+     */
+    private void loadIndex() {
+        if (mIndexLoaded) {
+            return;
+        }
+        mIndexLoaded = true;
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final ArrayList<File> entries = new ArrayList<>(files.length);
+        final long[] modified = new long[files.length];
+        for (File file : files) {
+            if (!file.getName().startsWith(FILE_PREFIX)) {
+                // Not ours
+                continue;
+            }
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left behind by a crash during a write
+                file.delete();
+            } else if (file.isFile()) {
+                modified[entries.size()] = file.lastModified();
+                entries.add(file);
+            }
+        }
+        final Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                final long difference = modified[a] - modified[b];
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (Integer index : order) {
+            final File file = entries.get(index);
+            final long size = file.length();
+            mEntries.put(file.getName().substring(FILE_PREFIX.length()), size);
+            mBytes += size;
+        }
+        trimToSize(mMaxBytes);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link TileSource} for an image on an IIIF Image API server. The constructor takes the values
+ * of the image's {@code info.json}, and every tile is requested as a region scaled to its level.
+ */
+public final class IiifTileSource extends UrlTileSource {
+
+    private final String mImageUrl;
+    private final String mFormat;
+
+    /**
+     * Requests the tiles as JPEG
+     *
+     * @see #IiifTileSource(String, int, int, int, String)
+     */
+    public IiifTileSource(@NonNull String imageUrl, int width, int height, int tileSize) {
+        this(imageUrl, width, height, tileSize, "jpg");
+    }
+
+    /**
+     * @param imageUrl the image's {@code id}, such as {@code https://example.com/iiif/image1}
+     * @param width    the image's {@code width}
+     * @param height   the image's {@code height}
+     * @param tileSize the {@code width} of the image's {@code tiles}
+     * @param format   file extension of the tiles, one of the server's formats
+     */
+    public IiifTileSource(@NonNull String imageUrl, int width, int height, int tileSize,
+                          @NonNull String format) {
+        super(width, height, tileSize);
+        mImageUrl = imageUrl.endsWith("/") ? imageUrl.substring(0, imageUrl.length() - 1)
+            : imageUrl;
+        mFormat = format;
+    }
+
+    @NonNull
+    @Override
+    protected String getTileUrl(int level, int column, int row) {
+        final Rect region = getTileRect(level, column, row);
+        final int scaledWidth = (region.width() + (1 << level) - 1) >> level;
+        final int scaledHeight = (region.height() + (1 << level) - 1) >> level;
+        // {region}/{size}/{rotation}/{quality}.{format}; "w,h" sizes are valid in versions 2 and 3
+        return mImageUrl + '/' + region.left + ',' + region.top + ',' + region.width() + ','
+            + region.height() + '/' + scaledWidth + ',' + scaledHeight + "/0/default." + mFormat;
+    }
+}
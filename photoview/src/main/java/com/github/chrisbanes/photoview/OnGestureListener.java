@@ -22,6 +22,17 @@ interface OnGestureListener {
     void onFling(float startX, float startY, float velocityX,
                  float velocityY);
 
-    void onScale(float scaleFactor, float focusX, float focusY);
+    /**
+     * Everything several pointers did in one event
+     *
+     * @param dx          movement of the pointers' centroid
+     * @param dy          movement of the pointers' centroid
+     * @param scaleFactor change of the pointers' span
+     * @param degrees     turn of the pointers, clockwise, or 0 if rotation is not enabled
+     * @param focusX      where the centroid is now
+     * @param focusY      where the centroid is now
+     */
+    void onTransform(float dx, float dy, float scaleFactor, float degrees, float focusX,
+                     float focusY);
 
 }
\ No newline at end of file
@@ -15,7 +15,9 @@
  */
 package com.github.chrisbanes.photoview;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
@@ -25,8 +27,11 @@ import android.util.SparseArray;
 import android.view.GestureDetector;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
+import java.io.IOException;
+
 /**
  * A zoomable ImageView. See {@link PhotoViewAttacher} for most of the details on how the zooming
  * is accomplished
@@ -36,6 +41,28 @@ public class PhotoView extends AppCompatImageView {
 
     private PhotoViewAttacher attacher;
     private ScaleType pendingScaleType;
+    private TiledImageDrawable tiledDrawable;
+    private boolean attachedToWindow;
+
+    // Forwards memory pressure to the tile cache of tiledDrawable. Only registered while attached
+    // to a window, as the application context would otherwise keep this view alive.
+    private final ComponentCallbacks2 trimMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (tiledDrawable != null) {
+                tiledDrawable.trimMemory(level);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
 
     public PhotoView(Context context) {
         this(context, null);
@@ -57,9 +84,16 @@ public class PhotoView extends AppCompatImageView {
         }
     }
 
+    /**
+     * Initializes this view with a snapshot of {@link ScaleConfig#getDefault()}
+     */
     public void initialize() {
+        initialize(ScaleConfig.getDefault());
+    }
+
+    public void initialize(@NonNull ScaleConfig scaleConfig) {
         attacher = new PhotoViewAttacher(this);
-        attacher.setScaleLevels(ScaleConfig.getScaleLevels());
+        attacher.setScaleConfig(scaleConfig);
     }
 
     public void initialize(@NonNull float... scaleLevels) {
@@ -112,9 +146,58 @@ public class PhotoView extends AppCompatImageView {
         }
     }
 
+    /**
+     * Shows an image that is too large to decode in one go, decoding only the visible tiles at the
+     * resolution the current scale needs. The tiles are released when another image is set, and
+     * while the view is detached from its window.
+     *
+     * @param path path of a JPEG or PNG file, or of a tile pack made by the {@code tilepacker}
+     *             tool
+     * @throws IOException if the image cannot be opened
+     */
+    public void setTiledImage(@NonNull String path) throws IOException {
+        setTiledImage(path, null);
+    }
+
+    /**
+     * Like {@link #setTiledImage(String)}, and keeps decoded tiles on disk so showing the same
+     * image again is much faster.
+     *
+     * @param path      path of a JPEG or PNG file, or of a tile pack made by the
+     *                  {@code tilepacker} tool
+     * @param diskCache where to keep decoded tiles, may be null
+     * @throws IOException if the image cannot be opened
+     */
+    public void setTiledImage(@NonNull String path, @Nullable DiskTileCache diskCache)
+        throws IOException {
+        setTiledDrawable(new TiledImageDrawable(path, diskCache));
+    }
+
+    /**
+     * Shows an image that is already cut into tiles, such as one on a DeepZoom or IIIF server.
+     * Tiles are loaded as they come into view and the tiles that leave it before they arrive are
+     * cancelled.
+     *
+     * @param source where to load the tiles from
+     * @see DeepZoomTileSource
+     * @see IiifTileSource
+     */
+    public void setTiledImage(@NonNull TileSource source) {
+        setTiledDrawable(new TiledImageDrawable(source));
+    }
+
+    private void setTiledDrawable(TiledImageDrawable drawable) {
+        setImageDrawable(drawable);
+        tiledDrawable = drawable;
+        if (attachedToWindow) {
+            getContext().getApplicationContext().registerComponentCallbacks(trimMemoryCallbacks);
+        }
+    }
+
     @Override
     public void setImageDrawable(Drawable drawable) {
         super.setImageDrawable(drawable);
+        releaseTiledImage();
         // setImageBitmap calls through to this method
         if (attacher != null) {
             attacher.update();
@@ -124,6 +207,7 @@ public class PhotoView extends AppCompatImageView {
     @Override
     public void setImageResource(int resId) {
         super.setImageResource(resId);
+        releaseTiledImage();
         if (attacher != null) {
             attacher.update();
         }
@@ -132,11 +216,44 @@ public class PhotoView extends AppCompatImageView {
     @Override
     public void setImageURI(Uri uri) {
         super.setImageURI(uri);
+        releaseTiledImage();
         if (attacher != null) {
             attacher.update();
         }
     }
 
+    private void releaseTiledImage() {
+        if (tiledDrawable != null && tiledDrawable != getDrawable()) {
+            tiledDrawable.recycle();
+            tiledDrawable = null;
+            if (attachedToWindow) {
+                getContext().getApplicationContext()
+                    .unregisterComponentCallbacks(trimMemoryCallbacks);
+            }
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attachedToWindow = true;
+        if (tiledDrawable != null) {
+            getContext().getApplicationContext().registerComponentCallbacks(trimMemoryCallbacks);
+            tiledDrawable.reloadTiles();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (tiledDrawable != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(trimMemoryCallbacks);
+            // Nothing is drawn until the view comes back, so the tiles are only taking up memory
+            tiledDrawable.releaseTiles();
+        }
+        attachedToWindow = false;
+        super.onDetachedFromWindow();
+    }
+
     @Override
     protected boolean setFrame(int l, int t, int r, int b) {
         boolean changed = super.setFrame(l, t, r, b);
@@ -258,6 +375,26 @@ public class PhotoView extends AppCompatImageView {
         attacher.setScale(scale, focalX, focalY, animate);
     }
 
+    public void setFrameCoalescingEnabled(boolean enabled) {
+        attacher.setFrameCoalescingEnabled(enabled);
+    }
+
+    public void setDecomposedStateEnabled(boolean enabled) {
+        attacher.setDecomposedStateEnabled(enabled);
+    }
+
+    public void setTwoFingerRotationEnabled(boolean enabled) {
+        attacher.setTwoFingerRotationEnabled(enabled);
+    }
+
+    public void setTouchResamplingEnabled(boolean enabled) {
+        attacher.setTouchResamplingEnabled(enabled);
+    }
+
+    public void setQuickScaleEnabled(boolean enabled) {
+        attacher.setQuickScaleEnabled(enabled);
+    }
+
     public void setZoomTransitionDuration(int milliseconds) {
         attacher.setZoomTransitionDuration(milliseconds);
     }
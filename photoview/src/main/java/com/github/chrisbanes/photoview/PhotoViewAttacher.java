@@ -17,15 +17,14 @@ package com.github.chrisbanes.photoview;
 
 import android.content.Context;
 import android.graphics.Matrix;
-import android.graphics.Matrix.ScaleToFit;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.SystemClock;
 import android.util.SparseArray;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnLongClickListener;
+import android.view.ViewConfiguration;
 import android.view.ViewParent;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
@@ -33,15 +32,11 @@ import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
 import android.widget.OverScroller;
 
-import androidx.annotation.FloatRange;
 import androidx.annotation.IntDef;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
-import static com.github.chrisbanes.photoview.ScaleConfig.SCALE_VALUE_MAX;
-import static com.github.chrisbanes.photoview.ScaleConfig.SCALE_VALUE_MIN;
-
 /**
  * The component of {@link PhotoView} which does the work allowing for zooming, scaling, panning, etc.
  * It is made public in case you need to subclass something other than AppCompatImageView and still
@@ -50,6 +45,8 @@ import static com.github.chrisbanes.photoview.ScaleConfig.SCALE_VALUE_MIN;
 public class PhotoViewAttacher implements View.OnTouchListener,
     View.OnLayoutChangeListener {
 
+    private static final long NANOS_PER_MS = 1000000L;
+
     private static final int DEFAULT_ZOOM_DURATION = 200;
     private static final int DEFAULT_ROTATE_DURATION = 200;
 
@@ -67,6 +64,11 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
     private static int SINGLE_TOUCH = 1;
 
+    // Below this difference a coalesced frame does not re-apply the matrix
+    private static final float MATRIX_EPSILON = 0.001f;
+    // Points along a fling, the last one being where it stops, to prefetch tiles for
+    private static final int FLING_PREFETCH_STEPS = 3;
+
     private Interpolator mZoomInterpolator = new AccelerateDecelerateInterpolator();
     private Interpolator mRotateInterpolator = new AccelerateDecelerateInterpolator();
 
@@ -79,6 +81,9 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private boolean mBlockParentIntercept = false;
     private boolean mBlockParentTouchEventInLifeCycle = false;
     private boolean mAllowRotateInAnyScale = true;
+    private boolean mFrameCoalescingEnabled = false;
+    private boolean mMatrixApplyPending = false;
+    private boolean mDecomposedStateEnabled = false;
 
     private ImageView mImageView;
 
@@ -87,12 +92,33 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private CustomGestureDetector mScaleDragDetector;
 
     // These are set so we don't keep allocating them on the heap
-    private final Matrix mBaseMatrix = new Matrix();
-    private final Matrix mDrawMatrix = new Matrix();
-    private final Matrix mSuppMatrix = new Matrix();
+    private final AffineMatrix mBaseMatrix = new AffineMatrix();
+    private final AffineMatrix mDrawMatrix = new AffineMatrix();
+    private final AffineMatrix mSuppMatrix = new AffineMatrix();
+    private final Matrix mImageMatrix = new Matrix();
+    private final AffineMatrix mAppliedMatrix = new AffineMatrix();
+    private final AffineMatrix mTempMatrix = new AffineMatrix();
+    // Source of truth for mSuppMatrix while mDecomposedStateEnabled is set
+    private final TransformState mSuppState = new TransformState();
+    private final RectF mTempRect = new RectF();
+    private final AffineMatrix mViewportMatrix = new AffineMatrix();
+    private final RectF mViewportRect = new RectF();
+    private final AffineMatrix mDoubleTapMatrix = new AffineMatrix();
+    // Where the second tap of a double tap landed, while the zoom waits for it to lift
+    private float mDoubleTapX, mDoubleTapY;
+    private float mBoundsDeltaX, mBoundsDeltaY;
     private final RectF mDisplayRect = new RectF();
+    private final RectF mPublicDisplayRect = new RectF();
     private final float[] mMatrixValues = new float[9];
 
+    // Versions of the base/supp matrices that mDrawMatrix and mDisplayRect were derived from
+    private int mDrawBaseGeneration = -1;
+    private int mDrawSuppGeneration = -1;
+    private boolean mDisplayRectValid;
+    // Intrinsic size of the Drawable that mDisplayRect was mapped from
+    private int mDrawableWidth;
+    private int mDrawableHeight;
+
     // Listeners
     private OnMatrixChangedListener mMatrixChangeListener;
     private OnPhotoTapListener mPhotoTapListener;
@@ -104,7 +130,13 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private OnSingleFlingListener mSingleFlingListener;
     private OnViewDragListener mOnViewDragListener;
 
-    private FlingRunnable mCurrentFlingRunnable;
+    private final AnimationDriver mAnimationDriver;
+    // Animations are reused, so starting one does not allocate
+    private final Fling mFling;
+    private final AnimatedTransform mZoomAnimation = new AnimatedTransform(false);
+    private final AnimatedTransform mRotateAnimation = new AnimatedTransform(true);
+    private float mDrawableDisplayWidth;
+    private float mDrawableDisplayHeight;
     private float mBaseRotation;
 
     private float mCompensateScale = 1f;
@@ -113,44 +145,78 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private boolean mZoomEnabled = true;
     private ScaleType mScaleType = ScaleType.FIT_CENTER;
 
-    private SparseArray<Float> scaleLevels = new SparseArray<>();
+    // Immutable, replaced as a whole
+    private ScaleConfig mScaleConfig = ScaleConfig.DEFAULT;
 
     private OnGestureListener onGestureListener = new OnGestureListener() {
         @Override
         public void onDrag(float dx, float dy) {
-            if (mScaleDragDetector.isScaling()) {
-                return; // Do not drag if we are already scaling
-            }
             if (mOnViewDragListener != null) {
                 mOnViewDragListener.onDrag(dx, dy);
             }
-            mSuppMatrix.postTranslate(dx, dy);
+            postSuppTranslate(dx, dy);
             checkAndDisplayMatrix();
             handleEdgeDrag(dx, dy, mEdgeDragPolicy);
         }
 
         @Override
         public void onFling(float startX, float startY, float velocityX, float velocityY) {
-            mCurrentFlingRunnable = new FlingRunnable(mImageView.getContext());
-            mCurrentFlingRunnable.fling(getImageViewWidth(mImageView),
+            if (isTransformAnimating()) {
+                // The zoom or rotation writes the whole supp matrix every frame and settles
+                // within bounds by itself, a fling would only be overwritten
+                return;
+            }
+            mFling.fling(getImageViewWidth(mImageView),
                 getImageViewHeight(mImageView), (int) velocityX, (int) velocityY);
-            mImageView.post(mCurrentFlingRunnable);
+            mAnimationDriver.start(AnimationDriver.SLOT_FLING, mFling);
         }
 
         @Override
-        public void onScale(float scaleFactor, float focusX, float focusY) {
-            if (getScale() < getCompensatedMaxScale() || scaleFactor < 1f) {
-                if (mScaleChangeListener != null) {
-                    mScaleChangeListener.onScaleChange(scaleFactor, focusX, focusY);
-                }
-                mSuppMatrix.postScale(scaleFactor, scaleFactor, focusX, focusY);
-                checkAndDisplayMatrix();
+        public void onTransform(float dx, float dy, float scaleFactor, float degrees,
+                                float focusX, float focusY) {
+            // Move the old focus onto the new one first, then scale and turn about it, and apply
+            // all of it at once
+            postSuppTranslate(dx, dy);
+            if (scaleFactor > 0f && !Float.isInfinite(scaleFactor)) {
+                postScaleBy(scaleFactor, focusX, focusY);
+            }
+            if (degrees != 0f) {
+                postSuppRotate(degrees, focusX, focusY);
+            }
+            checkAndDisplayMatrix();
+        }
+    };
+
+    // Sends resampled drags at frame time while touch resampling is enabled
+    private final AnimationDriver.Animation mResampledDrag = new AnimationDriver.Animation() {
+        @Override
+        public boolean onFrame(long frameTimeNanos) {
+            // Frame times and event times share the monotonic clock
+            return mScaleDragDetector.flushResampledDrag(frameTimeNanos / 1000000L);
+        }
+
+        @Override
+        public void onCancel() {
+            // The detector sends what is left when the pointer goes up
+        }
+    };
+
+    private final AnimationDriver.Host mAnimationHost = new AnimationDriver.Host() {
+        @Override
+        public void onAnimationFrame(long frameTimeNanos) {
+            // Animations only touch mSuppMatrix, check and apply their combined result once
+            mMatrixApplyPending = false;
+            if (checkMatrixBounds()) {
+                applyMatrixIfChanged();
             }
         }
     };
 
     public PhotoViewAttacher(ImageView imageView) {
         mImageView = imageView;
+        mAnimationDriver = new AnimationDriver(AnimationDriver.SYSTEM_CLOCK,
+            Compat.newFrameScheduler(), mAnimationHost);
+        mFling = new Fling(imageView.getContext());
         imageView.setOnTouchListener(this);
         imageView.addOnLayoutChangeListener(this);
         if (imageView.isInEditMode()) {
@@ -169,6 +235,13 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 }
             }
 
+            @Override
+            public boolean onSingleTapUp(MotionEvent e) {
+                // This may turn out to be the first half of a double tap
+                prefetchDoubleTapZoom(e.getX(), e.getY());
+                return false;
+            }
+
             @Override
             public boolean onFling(MotionEvent e1, MotionEvent e2,
                 float velocityX, float velocityY) {
@@ -191,7 +264,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 if (mOnClickListener != null) {
                     mOnClickListener.onClick(mImageView);
                 }
-                final RectF displayRect = getDisplayRect();
+                final RectF displayRect = getCachedDisplayRect();
                 final float x = e.getX(), y = e.getY();
                 if (mViewTapListener != null) {
                     mViewTapListener.onViewTap(mImageView, x, y);
@@ -218,6 +291,8 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
             @Override
             public boolean onDoubleTap(MotionEvent ev) {
+                // The speculative tiles are needed after all
+                mImageView.removeCallbacks(mCancelDoubleTapPrefetch);
                 float x = -1;
                 float y = -1;
                 try {
@@ -227,13 +302,12 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     // Can sometimes happen when getX() and getY() is called
                 }
                 if (x != -1 && y != -1) {
-                    float scale = getScale();
-                    float minScale = getCompensatedMinScale();
-                    float maxScale = getCompensatedMaxScale();
-                    if (scale > minScale && scale <= maxScale) {
-                        setScale(minScale, x, y, true);
+                    if (mScaleDragDetector.isQuickScaleEnabled()) {
+                        // The second tap may still turn into a quick scale, zoom once it lifts
+                        mDoubleTapX = x;
+                        mDoubleTapY = y;
                     } else {
-                        setScale(maxScale, x, y, true);
+                        setScale(getDoubleTapTargetScale(), x, y, true);
                     }
                 }
                 return true;
@@ -241,8 +315,13 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
             @Override
             public boolean onDoubleTapEvent(MotionEvent e) {
-                // Wait for the confirmed onDoubleTap() instead
-                return false;
+                if (e.getActionMasked() != MotionEvent.ACTION_UP
+                    || !mScaleDragDetector.isQuickScaleEnabled()
+                    || mScaleDragDetector.isDoubleTapConsumed()) {
+                    return false;
+                }
+                setScale(getDoubleTapTargetScale(), mDoubleTapX, mDoubleTapY, true);
+                return true;
             }
         });
     }
@@ -264,9 +343,19 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         return mZoomEnabled;
     }
 
+    /**
+     * Get the bounds of the displayed Drawable. This is a pure query: it does not touch the
+     * matrix, and it is only recomputed when the matrix changed since the last call.
+     *
+     * @return the display rect, or null if there is no Drawable. The returned instance is reused.
+     */
     public RectF getDisplayRect() {
-        checkMatrixBounds();
-        return getDisplayRect(getDrawMatrix());
+        final RectF displayRect = getCachedDisplayRect();
+        if (displayRect == null) {
+            return null;
+        }
+        mPublicDisplayRect.set(displayRect);
+        return mPublicDisplayRect;
     }
 
     public boolean setDisplayMatrix(Matrix finalMatrix) {
@@ -276,7 +365,9 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         if (mImageView.getDrawable() == null) {
             return false;
         }
-        mSuppMatrix.set(finalMatrix);
+        finalMatrix.getValues(mMatrixValues);
+        mTempMatrix.setValues(mMatrixValues);
+        setSupp(mTempMatrix);
         checkAndDisplayMatrix();
         return true;
     }
@@ -284,8 +375,8 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private void handleEdgeDrag(float dx, float dy, int policy) {
         ViewParent parent = mImageView.getParent();
         if (null == parent) return;
-        if (mAllowParentInterceptOnEdge && !mScaleDragDetector.isScaling() && !mBlockParentIntercept) {
-            RectF rectF = getDisplayRect(getDrawMatrix());
+        if (mAllowParentInterceptOnEdge && !mScaleDragDetector.isTransforming() && !mBlockParentIntercept) {
+            RectF rectF = getCachedDisplayRect();
             if (null == rectF) return;
             switch (policy) {
                 case PARENT_INTERCEPT:
@@ -325,21 +416,33 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     public void setRotationTo(float degrees) {
-        mSuppMatrix.setRotate(degrees % 360);
+        if (mDecomposedStateEnabled) {
+            mSuppState.setRotate(degrees % 360);
+            mSuppState.toMatrix(mSuppMatrix);
+        } else {
+            mSuppMatrix.setRotate(degrees % 360);
+        }
         checkAndDisplayMatrix();
     }
 
     public void setRotationBy(float degrees) {
-        mSuppMatrix.postRotate(degrees % 360);
+        postSuppRotate(degrees % 360, 0f, 0f);
         checkAndDisplayMatrix();
     }
 
-    private float[] getDrawableDisplayWidthHeight() {
+    /**
+     * Works out the size the drawable is displayed at by the base matrix, into
+     * mDrawableDisplayWidth and mDrawableDisplayHeight.
+     *
+     * @return false if there is no drawable or the scale type is not supported
+     */
+    private boolean computeDrawableDisplayWidthHeight() {
         Drawable drawable = mImageView.getDrawable();
         if (drawable == null) {
-            return null;
+            return false;
         }
-        float[] drawableDisplayWidthHeight = new float[2];
+        mDrawableDisplayWidth = 0f;
+        mDrawableDisplayHeight = 0f;
         float viewWidth = getImageViewWidth(mImageView);
         float viewHeight = getImageViewHeight(mImageView);
         float drawableWidth = drawable.getIntrinsicWidth();
@@ -347,28 +450,28 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         switch (mScaleType) {
             case CENTER_INSIDE:
                 if (drawableWidth <= viewWidth && drawableHeight <= viewHeight) {
-                    drawableDisplayWidthHeight[0] = drawableWidth;
-                    drawableDisplayWidthHeight[1] = drawableHeight;
+                    mDrawableDisplayWidth = drawableWidth;
+                    mDrawableDisplayHeight = drawableHeight;
                 }
-                break;
+                return true;
             case FIT_CENTER:
                 if ((drawableWidth / drawableHeight) > (viewWidth / viewHeight)) {
-                    drawableDisplayWidthHeight[0] = viewWidth;
-                    drawableDisplayWidthHeight[1] = viewWidth * (drawableHeight / drawableWidth);
+                    mDrawableDisplayWidth = viewWidth;
+                    mDrawableDisplayHeight = viewWidth * (drawableHeight / drawableWidth);
                 }
                 else {
-                    drawableDisplayWidthHeight[1] = viewHeight;
-                    drawableDisplayWidthHeight[0] = viewHeight * (drawableWidth / drawableHeight);
+                    mDrawableDisplayHeight = viewHeight;
+                    mDrawableDisplayWidth = viewHeight * (drawableWidth / drawableHeight);
                 }
-                break;
+                return true;
             default:
-                drawableDisplayWidthHeight = null;
-                break;
+                return false;
         }
-        return drawableDisplayWidthHeight;
     }
 
     public void rotateTo(@DegreeDefines int degree, boolean clockwise, boolean animate) {
+        // Let a running rotation land first, everything below is relative to the current state
+        mAnimationDriver.cancel(AnimationDriver.SLOT_ROTATE);
 
         if (mCurrentDegree == degree) {
             return;
@@ -382,9 +485,11 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         final float scale = getScale();
         if (!mAllowRotateInAnyScale && scale > getCompensatedMinScale()) return;
 
-        final float[] drawableDisplayWidthHeight = getDrawableDisplayWidthHeight();
-        final float displayWidth = drawableDisplayWidthHeight[0];
-        final float displayHeight = drawableDisplayWidthHeight[1];
+        if (!computeDrawableDisplayWidthHeight()) {
+            return;
+        }
+        final float displayWidth = mDrawableDisplayWidth;
+        final float displayHeight = mDrawableDisplayHeight;
         final float viewWidth = getImageViewWidth(mImageView);
         final float viewHeight = getImageViewHeight(mImageView);
         float displaySpec = displayWidth/displayHeight;
@@ -438,15 +543,18 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         }
 
         if (animate) {
-            mImageView.post(new RotateRunnable(rotateFactor, scaleResetFactor, scaleFactor));
+            mRotateAnimation.start(scaleResetFactor * scaleFactor, rotateFactor,
+                (mImageView.getRight()) / 2, (mImageView.getBottom()) / 2,
+                mRotateDuration, mRotateInterpolator);
+            mAnimationDriver.start(AnimationDriver.SLOT_ROTATE, mRotateAnimation);
         }
         else {
             // cancel scale effect before rotate
-            mSuppMatrix.postScale(scaleResetFactor, scaleResetFactor);
+            postSuppScale(scaleResetFactor, 0f, 0f);
             //scale to satisfy scale type after rotate
-            mSuppMatrix.postScale(scaleFactor, scaleFactor);
+            postSuppScale(scaleFactor, 0f, 0f);
 
-            mSuppMatrix.postRotate(rotateFactor);
+            postSuppRotate(rotateFactor, 0f, 0f);
 
             checkAndDisplayMatrix();
         }
@@ -473,9 +581,19 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         return getScaleAtLevel(level) * mCompensateScale;
     }
 
+    /**
+     * @return the current scale of the supp matrix. This is kept decomposed as the matrix
+     * changes, so calling it per frame is cheap.
+     */
     public float getScale() {
-        return (float) Math.sqrt((float) Math.pow(getValue(mSuppMatrix, Matrix.MSCALE_X), 2)
-                + (float) Math.pow(getValue(mSuppMatrix, Matrix.MSKEW_Y), 2));
+        return mSuppMatrix.getScale();
+    }
+
+    /**
+     * @return the current rotation of the supp matrix in degrees, in the range (-180, 180]
+     */
+    public float getRotation() {
+        return mSuppMatrix.getRotation();
     }
 
     public int getEdgeDragPolicy() {
@@ -514,40 +632,45 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     if (parent != null) {
                         parent.requestDisallowInterceptTouchEvent(true);
                     }
-                    // If we're flinging, and the user presses down, cancel
-                    // fling
-                    cancelFling();
-                    break;
-                case MotionEvent.ACTION_CANCEL:
-                case MotionEvent.ACTION_UP:
-                    // If the user has zoomed less than min scale, zoom back
-                    // to min scale
-                    if (getScale() < getCompensatedMinScale()) {
-                        RectF rect = getDisplayRect();
-                        if (rect != null) {
-                            v.post(new AnimatedZoomRunnable(getScale(), getCompensatedMinScale(),
-                                rect.centerX(), rect.centerY()));
-                            handled = true;
-                        }
-                    } else if (getScale() > getCompensatedMaxScale()) {
-                        RectF rect = getDisplayRect();
-                        if (rect != null) {
-                            v.post(new AnimatedZoomRunnable(getScale(), getCompensatedMaxScale(),
-                                rect.centerX(), rect.centerY()));
-                            handled = true;
-                        }
-                    }
+                    // If we're flinging or animating, and the user presses down,
+                    // cancel it
+                    cancelAnimations();
                     break;
             }
             // Try the Scale/Drag detector
             if (mScaleDragDetector != null) {
-                boolean wasScaling = mScaleDragDetector.isScaling();
+                boolean wasScaling = mScaleDragDetector.isTransforming()
+                    || mScaleDragDetector.isQuickScaling();
                 boolean wasDragging = mScaleDragDetector.isDragging();
                 handled = mScaleDragDetector.onTouchEvent(ev);
-                boolean didntScale = !wasScaling && !mScaleDragDetector.isScaling();
+                if (mScaleDragDetector.hasResampledDrag()) {
+                    mAnimationDriver.start(AnimationDriver.SLOT_DRAG, mResampledDrag);
+                }
+                boolean didntScale = !wasScaling && !mScaleDragDetector.isTransforming()
+                    && !mScaleDragDetector.isQuickScaling();
                 boolean didntDrag = !wasDragging && !mScaleDragDetector.isDragging();
                 mBlockParentIntercept = didntScale && didntDrag;
             }
+            final int action = ev.getAction();
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                // The detector already sent the final drag, no frame may flush another one
+                mAnimationDriver.cancel(AnimationDriver.SLOT_DRAG);
+                // If the user has zoomed less than min scale, zoom back to min scale. Done after
+                // the detector, so the zoom starts from the final drag and replaces the fling.
+                if (getScale() < getCompensatedMinScale()) {
+                    RectF rect = getCachedDisplayRect();
+                    if (rect != null) {
+                        startZoom(getCompensatedMinScale(), rect.centerX(), rect.centerY());
+                        handled = true;
+                    }
+                } else if (getScale() > getCompensatedMaxScale()) {
+                    RectF rect = getCachedDisplayRect();
+                    if (rect != null) {
+                        startZoom(getCompensatedMaxScale(), rect.centerX(), rect.centerY());
+                        handled = true;
+                    }
+                }
+            }
             // Check to see if the user double tapped
             if (mGestureDetector != null && mGestureDetector.onTouchEvent(ev)) {
                 handled = true;
@@ -561,60 +684,178 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         mAllowParentInterceptOnEdge = allow;
     }
 
+    /**
+     * When enabled, matrix changes caused by touch events and animations are accumulated and
+     * handed to the ImageView at most once per frame, and the {@link OnMatrixChangedListener}
+     * fires at most once per frame. A frame whose matrix did not change is skipped entirely.
+     *
+     * @param enabled whether to coalesce matrix changes per frame
+     */
+    public void setFrameCoalescingEnabled(boolean enabled) {
+        if (mFrameCoalescingEnabled == enabled) {
+            return;
+        }
+        mFrameCoalescingEnabled = enabled;
+        if (!enabled && mMatrixApplyPending) {
+            // Flush whatever was waiting for the next frame
+            mMatrixApplyPending = false;
+            applyMatrixIfChanged();
+        }
+    }
+
+    public boolean isFrameCoalescingEnabled() {
+        return mFrameCoalescingEnabled;
+    }
+
+    /**
+     * When enabled, the supp transform is stored as a separate scale, rotation and translation,
+     * and the matrix is rebuilt from those on every change. This keeps long sessions free of the
+     * skew and scale drift that thousands of matrix multiplications accumulate. Matrices passed
+     * to {@link #setDisplayMatrix(Matrix)} are decomposed, dropping any skew.
+     *
+     * @param enabled whether to use the decomposed state model
+     */
+    public void setDecomposedStateEnabled(boolean enabled) {
+        if (mDecomposedStateEnabled == enabled) {
+            return;
+        }
+        mDecomposedStateEnabled = enabled;
+        if (enabled) {
+            mSuppState.set(mSuppMatrix);
+            mSuppState.toMatrix(mSuppMatrix);
+            checkAndDisplayMatrix();
+        }
+    }
+
+    public boolean isDecomposedStateEnabled() {
+        return mDecomposedStateEnabled;
+    }
+
     public void setAllowRotateInAnyScale(boolean allow) {
         mAllowRotateInAnyScale = allow;
     }
 
+    /**
+     * When enabled, turning two fingers rotates the image freely, along with the pinch and pan.
+     * Off by default.
+     *
+     * @param enabled whether two-finger rotation is enabled
+     */
+    public void setTwoFingerRotationEnabled(boolean enabled) {
+        if (mScaleDragDetector != null) {
+            mScaleDragDetector.setRotationEnabled(enabled);
+        }
+    }
+
+    public boolean isTwoFingerRotationEnabled() {
+        return mScaleDragDetector != null && mScaleDragDetector.isRotationEnabled();
+    }
+
+    /**
+     * When enabled, holding down the second tap of a double tap and dragging it down zooms in
+     * about the tap, and dragging it up zooms out. The double tap zoom then waits for the second
+     * tap to lift, and is skipped if it was dragged. On by default.
+     *
+     * @param enabled whether quick scale is enabled
+     */
+    public void setQuickScaleEnabled(boolean enabled) {
+        if (mScaleDragDetector != null) {
+            mScaleDragDetector.setQuickScaleEnabled(enabled);
+        }
+    }
+
+    public boolean isQuickScaleEnabled() {
+        return mScaleDragDetector != null && mScaleDragDetector.isQuickScaleEnabled();
+    }
+
+    /**
+     * When enabled, drags are applied once per frame, at where the finger is estimated to be at
+     * that frame's time, rather than at every touch event. Touch events arrive a little after
+     * the finger moved and frames show a little after they are drawn, so this keeps the image
+     * closer under the finger. The estimate looks at most 8 ms ahead and lands exactly under the
+     * finger when it lifts. Off by default.
+     *
+     * @param enabled whether touch resampling is enabled
+     */
+    public void setTouchResamplingEnabled(boolean enabled) {
+        if (mScaleDragDetector != null) {
+            mScaleDragDetector.setResamplingEnabled(enabled);
+        }
+        if (!enabled) {
+            mAnimationDriver.cancel(AnimationDriver.SLOT_DRAG);
+        }
+    }
+
+    public boolean isTouchResamplingEnabled() {
+        return mScaleDragDetector != null && mScaleDragDetector.isResamplingEnabled();
+    }
+
+    /**
+     * @return a copy of the scale levels, keyed by level
+     */
     public SparseArray<Float> getScaleLevels() {
-        return scaleLevels;
+        return mScaleConfig.getLevels().toSparseArray();
+    }
+
+    public int getScaleLevelCount() {
+        return mScaleConfig.getLevelCount();
     }
 
     public float getMinScale() {
-        return scaleLevels.get(0);
+        return mScaleConfig.getMinScale();
     }
 
     public float getMaxScale() {
-        return scaleLevels.get(scaleLevels.size() - 1);
+        return mScaleConfig.getMaxScale();
     }
 
     public float getScaleAtLevel(int level) {
-        return scaleLevels.get(level);
+        return mScaleConfig.getScaleAtLevel(level);
     }
 
+    /**
+     * @return the highest level whose scale is not bigger than {@code scale}, or -1 if it is below
+     * the lowest level
+     */
     public int getLevelByScale(float scale) {
-        for (int i = 0; i < scaleLevels.size(); ++i) {
-            if (scale >= scaleLevels.get(i)) continue;
-            return i - 1;
+        return mScaleConfig.getLevelByScale(scale);
+    }
+
+    public ScaleConfig getScaleConfig() {
+        return mScaleConfig;
+    }
+
+    public void setScaleConfig(ScaleConfig scaleConfig) {
+        if (scaleConfig == null) {
+            throw new IllegalArgumentException("ScaleConfig cannot be null");
         }
-        return scaleLevels.size() - 1;
+        mScaleConfig = scaleConfig;
     }
 
+    /**
+     * Compatibility adapter for the {@link SparseArray} based API. Scales outside
+     * [{@link ScaleConfig#SCALE_VALUE_MIN}, {@link ScaleConfig#SCALE_VALUE_MAX}] throw at runtime,
+     * where they used to be caught only by lint.
+     *
+     * @param scaleLevels scale of each level keyed by level, with keys 0 to {@code size() - 1}
+     *                    and no gaps
+     * @throws IllegalArgumentException if the keys have gaps, or a scale is out of range or not
+     *                                  bigger than the one before it
+     */
     public void setScaleLevels(SparseArray<Float> scaleLevels) {
-        if (scaleLevels.size() < 2) {
-            throw new IllegalArgumentException("At least two levels are required");
-        }
-        for (int i = 0; i < scaleLevels.size(); ++i) {
-            for (int j = 0; j < i; ++j) {
-                if (scaleLevels.get(i) <= scaleLevels.get(j))
-                    throw new IllegalArgumentException(String.format("Scale level %d value must " +
-                            "bigger than scale level %d value", i, j));
-            }
-            setScaleLevel(i, scaleLevels.get(i));
-        }
+        mScaleConfig = new ScaleConfig.Builder().setScaleLevels(scaleLevels).build();
     }
 
+    /**
+     * Scales outside [{@link ScaleConfig#SCALE_VALUE_MIN}, {@link ScaleConfig#SCALE_VALUE_MAX}]
+     * throw at runtime, where they used to be caught only by lint.
+     *
+     * @param scaleLevels scale of each level, strictly increasing
+     * @throws IllegalArgumentException if a scale is out of range or not bigger than the one before
+     *                                  it
+     */
     public void setScaleLevels(float... scaleLevels) {
-        if (scaleLevels.length < 2) {
-            throw new IllegalArgumentException("At least two levels are required");
-        }
-        for (int i = 0; i < scaleLevels.length; ++i) {
-            for (int j = 0; j < i; ++j) {
-                if (scaleLevels[i]<= scaleLevels[j])
-                    throw new IllegalArgumentException(String.format("Scale level %d value must " +
-                            "bigger than scale level %d value", i, j));
-            }
-            setScaleLevel(i, scaleLevels[i]);
-        }
+        mScaleConfig = new ScaleConfig.Builder().setScaleLevels(scaleLevels).build();
     }
 
     public void setOnLongClickListener(OnLongClickListener listener) {
@@ -663,10 +904,15 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             throw new IllegalArgumentException("Scale must be within the range of minScale and maxScale");
         }
         if (animate) {
-            mImageView.post(new AnimatedZoomRunnable(getScale(), scale,
-                focalX, focalY));
+            startZoom(scale, focalX, focalY);
         } else {
-            mSuppMatrix.setScale(scale, scale, focalX, focalY);
+            mAnimationDriver.cancel(AnimationDriver.SLOT_ZOOM);
+            if (mDecomposedStateEnabled) {
+                mSuppState.setScale(scale, focalX, focalY);
+                mSuppState.toMatrix(mSuppMatrix);
+            } else {
+                mSuppMatrix.setScale(scale, scale, focalX, focalY);
+            }
             checkAndDisplayMatrix();
         }
     }
@@ -701,6 +947,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     public void update() {
+        mDisplayRectValid = false;
         if (mZoomEnabled) {
             // Update the base matrix using the current drawable
             updateBaseMatrix(mImageView.getDrawable());
@@ -716,24 +963,33 @@ public class PhotoViewAttacher implements View.OnTouchListener,
      * @param matrix target matrix to copy to
      */
     public void getDisplayMatrix(Matrix matrix) {
-        matrix.set(getDrawMatrix());
+        copyToMatrix(getDrawMatrix(), matrix);
     }
 
     /**
      * Get the current support matrix
      */
     public void getSuppMatrix(Matrix matrix) {
-        matrix.set(mSuppMatrix);
+        copyToMatrix(mSuppMatrix, matrix);
     }
 
-    private Matrix getDrawMatrix() {
-        mDrawMatrix.set(mBaseMatrix);
-        mDrawMatrix.postConcat(mSuppMatrix);
+    private AffineMatrix getDrawMatrix() {
+        final int baseGeneration = mBaseMatrix.getGeneration();
+        final int suppGeneration = mSuppMatrix.getGeneration();
+        if (baseGeneration != mDrawBaseGeneration || suppGeneration != mDrawSuppGeneration) {
+            mDrawMatrix.setConcat(mSuppMatrix, mBaseMatrix);
+            mDrawBaseGeneration = baseGeneration;
+            mDrawSuppGeneration = suppGeneration;
+            mDisplayRectValid = false;
+        }
         return mDrawMatrix;
     }
 
+    /**
+     * Get the matrix last handed to the ImageView. Only updated when the matrix is displayed.
+     */
     public Matrix getImageMatrix() {
-        return mDrawMatrix;
+        return mImageMatrix;
     }
 
     public void setZoomTransitionDuration(int milliseconds) {
@@ -749,24 +1005,15 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         mCompensateScale = compensateScale;
     }
 
-    private void setScaleLevel(int key, @FloatRange(from = SCALE_VALUE_MIN, to = SCALE_VALUE_MAX) float scaleLevel) {
-        if (scaleLevel < SCALE_VALUE_MIN || scaleLevel > SCALE_VALUE_MAX) {
-            throw new IllegalArgumentException(String.format("scaleLevel value must between %f and %f",
-                    SCALE_VALUE_MIN, SCALE_VALUE_MAX));
-        }
-        scaleLevels.put(key, scaleLevel);
-    }
-
     /**
-     * Helper method that 'unpacks' a Matrix and returns the required value
+     * Helper method that copies an {@link AffineMatrix} into an android Matrix
      *
-     * @param matrix     Matrix to unpack
-     * @param whichValue Which value from Matrix.M* to return
-     * @return returned value
+     * @param src AffineMatrix to copy
+     * @param dst Matrix to copy to
      */
-    private float getValue(Matrix matrix, int whichValue) {
-        matrix.getValues(mMatrixValues);
-        return mMatrixValues[whichValue];
+    private void copyToMatrix(AffineMatrix src, Matrix dst) {
+        src.getValues(mMatrixValues);
+        dst.setValues(mMatrixValues);
     }
 
     /**
@@ -774,46 +1021,157 @@ public class PhotoViewAttacher implements View.OnTouchListener,
      */
     private void resetMatrix() {
         mSuppMatrix.reset();
+        mSuppState.reset();
         setRotationBy(mBaseRotation);
         setImageViewMatrix(getDrawMatrix());
         checkMatrixBounds();
     }
 
-    private void setImageViewMatrix(Matrix matrix) {
-        mImageView.setImageMatrix(matrix);
+    private void setImageViewMatrix(AffineMatrix matrix) {
+        mAppliedMatrix.set(matrix);
+        // This is the only place the transform is converted to an android Matrix
+        copyToMatrix(matrix, mImageMatrix);
+        mImageView.setImageMatrix(mImageMatrix);
+        final TiledImageDrawable tiledDrawable = getTiledDrawable();
+        if (tiledDrawable != null) {
+            updateTileViewport(tiledDrawable, matrix);
+        }
         // Call MatrixChangedListener if needed
         if (mMatrixChangeListener != null) {
-            RectF displayRect = getDisplayRect(matrix);
+            RectF displayRect = getCachedDisplayRect();
             if (displayRect != null) {
                 mMatrixChangeListener.onMatrixChanged(displayRect);
             }
         }
     }
 
+    /**
+     * Tells a tiled drawable which part of it the view shows, in drawable coordinates
+     */
+    private void updateTileViewport(TiledImageDrawable drawable, AffineMatrix matrix) {
+        if (!matrix.invert(mViewportMatrix)) {
+            return;
+        }
+        mViewportMatrix.mapRect(mViewportRect, 0f, 0f,
+            getImageViewWidth(mImageView), getImageViewHeight(mImageView));
+        drawable.setViewport(mViewportRect, matrix.getScale());
+    }
+
     /**
      * Helper method that simply checks the Matrix, and then displays the result
      */
     private void checkAndDisplayMatrix() {
         if (checkMatrixBounds()) {
-            setImageViewMatrix(getDrawMatrix());
+            if (mFrameCoalescingEnabled) {
+                scheduleMatrixApply();
+            } else {
+                setImageViewMatrix(getDrawMatrix());
+            }
+        }
+    }
+
+    private void scheduleMatrixApply() {
+        if (!mMatrixApplyPending) {
+            mMatrixApplyPending = true;
+            mAnimationDriver.requestFrame();
+        }
+    }
+
+    private void setSupp(TransformState state) {
+        if (mDecomposedStateEnabled) {
+            mSuppState.set(state);
+        }
+        state.toMatrix(mSuppMatrix);
+    }
+
+    private void setSupp(AffineMatrix matrix) {
+        if (mDecomposedStateEnabled) {
+            mSuppState.set(matrix);
+            mSuppState.toMatrix(mSuppMatrix);
+        } else {
+            mSuppMatrix.set(matrix);
+        }
+    }
+
+    private void postSuppTranslate(float dx, float dy) {
+        if (mDecomposedStateEnabled) {
+            mSuppState.postTranslate(dx, dy);
+            mSuppState.toMatrix(mSuppMatrix);
+        } else {
+            mSuppMatrix.postTranslate(dx, dy);
+        }
+    }
+
+    private void postSuppScale(float scale, float px, float py) {
+        if (mDecomposedStateEnabled) {
+            mSuppState.postScale(scale, px, py);
+            mSuppState.toMatrix(mSuppMatrix);
+        } else {
+            mSuppMatrix.postScale(scale, scale, px, py);
+        }
+    }
+
+    private void postSuppRotate(float degrees, float px, float py) {
+        if (mDecomposedStateEnabled) {
+            mSuppState.postRotate(degrees, px, py);
+            mSuppState.toMatrix(mSuppMatrix);
+        } else {
+            mSuppMatrix.postRotate(degrees, px, py);
         }
     }
 
     /**
-     * Helper method that maps the supplied Matrix to the current Drawable
+     * Applies the current draw matrix, unless it is the same as the one last applied
+     */
+    private void applyMatrixIfChanged() {
+        final AffineMatrix drawMatrix = getDrawMatrix();
+        if (!drawMatrix.nearlyEquals(mAppliedMatrix, MATRIX_EPSILON)) {
+            setImageViewMatrix(drawMatrix);
+        }
+    }
+
+    /**
+     * Post scales the supp matrix, unless that would zoom in beyond the max scale. Does not
+     * display the result.
+     *
+     * @return true if the matrix was scaled
+     */
+    private boolean postScaleBy(float scaleFactor, float focusX, float focusY) {
+        if (getScale() < getCompensatedMaxScale() || scaleFactor < 1f) {
+            if (mScaleChangeListener != null) {
+                mScaleChangeListener.onScaleChange(scaleFactor, focusX, focusY);
+            }
+            postSuppScale(scaleFactor, focusX, focusY);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper method that maps the draw matrix to the current Drawable. The result is only
+     * recomputed when the base or supp matrix or the Drawable's intrinsic size changed, so a
+     * Drawable that changes size in place, such as a level-list or an animation, is picked up.
      *
-     * @param matrix - Matrix to map Drawable against
      * @return RectF - Displayed Rectangle
      */
-    private RectF getDisplayRect(Matrix matrix) {
+    private RectF getCachedDisplayRect() {
         Drawable d = mImageView.getDrawable();
-        if (d != null) {
-            mDisplayRect.set(0, 0, d.getIntrinsicWidth(),
-                d.getIntrinsicHeight());
-            matrix.mapRect(mDisplayRect);
-            return mDisplayRect;
+        if (d == null) {
+            return null;
+        }
+        final AffineMatrix drawMatrix = getDrawMatrix();
+        final int width = d.getIntrinsicWidth();
+        final int height = d.getIntrinsicHeight();
+        if (width != mDrawableWidth || height != mDrawableHeight) {
+            mDrawableWidth = width;
+            mDrawableHeight = height;
+            mDisplayRectValid = false;
         }
-        return null;
+        if (!mDisplayRectValid) {
+            drawMatrix.mapRect(mDisplayRect, 0, 0, mDrawableWidth, mDrawableHeight);
+            mDisplayRectValid = true;
+        }
+        return mDisplayRect;
     }
 
     /**
@@ -849,23 +1207,28 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 (viewHeight - drawableHeight * scale) / 2F);
 
         } else {
-            RectF mTempSrc = new RectF(0, 0, drawableWidth, drawableHeight);
-            RectF mTempDst = new RectF(0, 0, viewWidth, viewHeight);
+            float srcWidth = drawableWidth;
+            float srcHeight = drawableHeight;
             if ((int) mBaseRotation % 180 != 0) {
-                mTempSrc = new RectF(0, 0, drawableHeight, drawableWidth);
+                srcWidth = drawableHeight;
+                srcHeight = drawableWidth;
             }
             switch (mScaleType) {
                 case FIT_CENTER:
-                    mBaseMatrix.setRectToRect(mTempSrc, mTempDst, ScaleToFit.CENTER);
+                    mBaseMatrix.setRectToRect(srcWidth, srcHeight, viewWidth, viewHeight,
+                        AffineMatrix.SCALE_TO_FIT_CENTER);
                     break;
                 case FIT_START:
-                    mBaseMatrix.setRectToRect(mTempSrc, mTempDst, ScaleToFit.START);
+                    mBaseMatrix.setRectToRect(srcWidth, srcHeight, viewWidth, viewHeight,
+                        AffineMatrix.SCALE_TO_FIT_START);
                     break;
                 case FIT_END:
-                    mBaseMatrix.setRectToRect(mTempSrc, mTempDst, ScaleToFit.END);
+                    mBaseMatrix.setRectToRect(srcWidth, srcHeight, viewWidth, viewHeight,
+                        AffineMatrix.SCALE_TO_FIT_END);
                     break;
                 case FIT_XY:
-                    mBaseMatrix.setRectToRect(mTempSrc, mTempDst, ScaleToFit.FILL);
+                    mBaseMatrix.setRectToRect(srcWidth, srcHeight, viewWidth, viewHeight,
+                        AffineMatrix.SCALE_TO_FIT_FILL);
                     break;
                 default:
                     break;
@@ -875,10 +1238,38 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     private boolean checkMatrixBounds() {
-        final RectF rect = getDisplayRect(getDrawMatrix());
+        final RectF rect = getCachedDisplayRect();
         if (rect == null) {
             return false;
         }
+        computeBoundsDelta(rect);
+        // Finally actually translate the matrix
+        postSuppTranslate(mBoundsDeltaX, mBoundsDeltaY);
+        return true;
+    }
+
+    /**
+     * Works out the translation that checkMatrixBounds() would apply if the given matrix was the
+     * supp matrix, and leaves it in mBoundsDeltaX/mBoundsDeltaY.
+     *
+     * @return false if there is no Drawable to check against
+     */
+    private boolean computeBoundsDelta(AffineMatrix suppMatrix) {
+        final Drawable d = mImageView.getDrawable();
+        if (d == null) {
+            return false;
+        }
+        mTempMatrix.setConcat(suppMatrix, mBaseMatrix);
+        mTempMatrix.mapRect(mTempRect, 0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        computeBoundsDelta(mTempRect);
+        return true;
+    }
+
+    /**
+     * Works out the translation that brings the given display rect back within bounds, and leaves
+     * it in mBoundsDeltaX/mBoundsDeltaY.
+     */
+    private void computeBoundsDelta(RectF rect) {
         final float height = rect.height(), width = rect.width();
         float deltaX = 0, deltaY = 0;
         final int viewHeight = getImageViewHeight(mImageView);
@@ -917,9 +1308,8 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         } else if (rect.right < viewWidth) {
             deltaX = viewWidth - rect.right;
         }
-        // Finally actually translate the matrix
-        mSuppMatrix.postTranslate(deltaX, deltaY);
-        return true;
+        mBoundsDeltaX = deltaX;
+        mBoundsDeltaY = deltaY;
     }
 
     private int getImageViewWidth(ImageView imageView) {
@@ -930,64 +1320,155 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         return imageView.getHeight() - imageView.getPaddingTop() - imageView.getPaddingBottom();
     }
 
-    private void cancelFling() {
-        if (mCurrentFlingRunnable != null) {
-            mCurrentFlingRunnable.cancelFling();
-            mCurrentFlingRunnable = null;
-        }
+    private void cancelAnimations() {
+        mAnimationDriver.cancelAll();
+        cancelPendingTileDecodes();
     }
 
-    private class AnimatedZoomRunnable implements Runnable {
-
-        private final float mFocalX, mFocalY;
-        private final long mStartTime;
-        private final float mZoomStart, mZoomEnd;
-
-        public AnimatedZoomRunnable(final float currentZoom, final float targetZoom,
-            final float focalX, final float focalY) {
-            mFocalX = focalX;
-            mFocalY = focalY;
-            mStartTime = System.currentTimeMillis();
-            mZoomStart = currentZoom;
-            mZoomEnd = targetZoom;
+    private void cancelPendingTileDecodes() {
+        final TiledImageDrawable tiledDrawable = getTiledDrawable();
+        if (tiledDrawable != null) {
+            tiledDrawable.cancelPendingDecodes();
         }
+    }
 
+    private final Runnable mCancelDoubleTapPrefetch = new Runnable() {
         @Override
         public void run() {
-            float t = interpolate();
-            float scale = mZoomStart + t * (mZoomEnd - mZoomStart);
-            float deltaScale = scale / getScale();
-            onGestureListener.onScale(deltaScale, mFocalX, mFocalY);
-            // We haven't hit our target scale yet, so post ourselves again
-            if (t < 1f) {
-                Compat.postOnAnimation(mImageView, this);
+            final TiledImageDrawable tiledDrawable = getTiledDrawable();
+            if (tiledDrawable != null) {
+                tiledDrawable.cancelPrefetch(TiledImageDrawable.PREFETCH_ZOOM);
             }
         }
+    };
+
+    /**
+     * @return the scale a double tap zooms to from the current scale
+     */
+    private float getDoubleTapTargetScale() {
+        final float scale = getScale();
+        final float minScale = getCompensatedMinScale();
+        final float maxScale = getCompensatedMaxScale();
+        return scale > minScale && scale <= maxScale ? minScale : maxScale;
+    }
+
+    /**
+     * Starts decoding the tiles a double tap at this point would zoom in on, while the gesture
+     * detector waits to see whether a second tap follows. Cancelled once the double tap timeout
+     * passes without one.
+     */
+    private void prefetchDoubleTapZoom(float x, float y) {
+        final TiledImageDrawable tiledDrawable = getTiledDrawable();
+        if (tiledDrawable == null) {
+            return;
+        }
+        mImageView.removeCallbacks(mCancelDoubleTapPrefetch);
+        tiledDrawable.cancelPrefetch(TiledImageDrawable.PREFETCH_ZOOM);
+        final float targetScale = getDoubleTapTargetScale();
+        if (targetScale <= getScale()) {
+            // Zooming out only needs coarser tiles
+            return;
+        }
+        // Where the zoom animation will end, including its bounds correction
+        mDoubleTapMatrix.set(mSuppMatrix);
+        mDoubleTapMatrix.postScale(targetScale / getScale(), targetScale / getScale(), x, y);
+        if (!computeBoundsDelta(mDoubleTapMatrix)) {
+            return;
+        }
+        mDoubleTapMatrix.postTranslate(mBoundsDeltaX, mBoundsDeltaY);
+        mDoubleTapMatrix.preConcat(mBaseMatrix);
+        if (!mDoubleTapMatrix.invert(mViewportMatrix)) {
+            return;
+        }
+        mViewportMatrix.mapRect(mViewportRect, 0f, 0f,
+            getImageViewWidth(mImageView), getImageViewHeight(mImageView));
+        tiledDrawable.prefetch(mViewportRect, mDoubleTapMatrix.getScale(),
+            TiledImageDrawable.PREFETCH_ZOOM);
+        mImageView.postDelayed(mCancelDoubleTapPrefetch, ViewConfiguration.getDoubleTapTimeout());
+    }
+
+    private TiledImageDrawable getTiledDrawable() {
+        final Drawable drawable = mImageView.getDrawable();
+        return drawable instanceof TiledImageDrawable ? (TiledImageDrawable) drawable : null;
+    }
 
-        private float interpolate() {
-            float t = 1f * (System.currentTimeMillis() - mStartTime) / mZoomDuration;
-            t = Math.min(1f, t);
-            t = mZoomInterpolator.getInterpolation(t);
-            return t;
+    /**
+     * Prefetches the tiles a fling will pass over and stop at
+     *
+     * @param dx total horizontal translation of the fling
+     * @param dy total vertical translation of the fling
+     */
+    private void prefetchFlingTiles(float dx, float dy) {
+        final TiledImageDrawable tiledDrawable = getTiledDrawable();
+        if (tiledDrawable == null) {
+            return;
+        }
+        // Whatever an earlier fling was heading for is no longer interesting
+        tiledDrawable.cancelPrefetch(TiledImageDrawable.PREFETCH_FLING);
+        final AffineMatrix drawMatrix = getDrawMatrix();
+        final float viewWidth = getImageViewWidth(mImageView);
+        final float viewHeight = getImageViewHeight(mImageView);
+        for (int step = 1; step <= FLING_PREFETCH_STEPS; step++) {
+            final float fraction = (float) step / FLING_PREFETCH_STEPS;
+            mTempMatrix.set(drawMatrix);
+            mTempMatrix.postTranslate(fraction * dx, fraction * dy);
+            if (!mTempMatrix.invert(mViewportMatrix)) {
+                return;
+            }
+            mViewportMatrix.mapRect(mViewportRect, 0f, 0f, viewWidth, viewHeight);
+            tiledDrawable.prefetch(mViewportRect, drawMatrix.getScale(),
+                TiledImageDrawable.PREFETCH_FLING);
         }
     }
 
-    private class FlingRunnable implements Runnable {
+    /**
+     * @return whether an animated zoom or rotation is running
+     */
+    private boolean isTransformAnimating() {
+        return mAnimationDriver.isRunning(AnimationDriver.SLOT_ZOOM)
+            || mAnimationDriver.isRunning(AnimationDriver.SLOT_ROTATE);
+    }
+
+    /**
+     * Exposed so tests can drive frames directly
+     */
+    AnimationDriver getAnimationDriver() {
+        return mAnimationDriver;
+    }
+
+    /**
+     * Exposed so tests can send gestures without going through the framework's detectors
+     */
+    OnGestureListener getOnGestureListener() {
+        return onGestureListener;
+    }
+
+    private void startZoom(float targetScale, float focalX, float focalY) {
+        mZoomAnimation.start(targetScale / getScale(), 0f, focalX, focalY,
+            mZoomDuration, mZoomInterpolator);
+        mAnimationDriver.start(AnimationDriver.SLOT_ZOOM, mZoomAnimation);
+    }
+
+    private float interpolate(long startTime, long frameTimeNanos, int duration,
+        Interpolator interpolator) {
+        float t = duration > 0 ? 1f * (frameTimeNanos - startTime) / (duration * NANOS_PER_MS) : 1f;
+        t = Math.max(0f, Math.min(1f, t));
+        return interpolator.getInterpolation(t);
+    }
+
+    private class Fling implements AnimationDriver.Animation {
 
         private final OverScroller mScroller;
         private int mCurrentX, mCurrentY;
 
-        public FlingRunnable(Context context) {
+        public Fling(Context context) {
             mScroller = new OverScroller(context);
         }
 
-        public void cancelFling() {
-            mScroller.forceFinished(true);
-        }
-
         public void fling(int viewWidth, int viewHeight, int velocityX,
             int velocityY) {
-            final RectF rect = getDisplayRect();
+            mScroller.forceFinished(true);
+            final RectF rect = getCachedDisplayRect();
             if (rect == null) {
                 return;
             }
@@ -1012,71 +1493,116 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             if (startX != maxX || startY != maxY) {
                 mScroller.fling(startX, startY, velocityX, velocityY, minX,
                     maxX, minY, maxY, 0, 0);
+                // The scroller knows where it will stop as soon as it starts
+                prefetchFlingTiles(startX - mScroller.getFinalX(), startY - mScroller.getFinalY());
             }
         }
 
         @Override
-        public void run() {
+        public boolean onFrame(long frameTimeNanos) {
             if (mScroller.isFinished()) {
-                return; // remaining post that should not be handled
+                return false; // nothing left to scroll
             }
             if (mScroller.computeScrollOffset()) {
                 final int newX = mScroller.getCurrX();
                 final int newY = mScroller.getCurrY();
-                mSuppMatrix.postTranslate(mCurrentX - newX, mCurrentY - newY);
-                checkAndDisplayMatrix();
+                postSuppTranslate(mCurrentX - newX, mCurrentY - newY);
                 mCurrentX = newX;
                 mCurrentY = newY;
-                // Post On animation
-                Compat.postOnAnimation(mImageView, this);
+                return true;
             }
+            return false;
+        }
+
+        @Override
+        public void onCancel() {
+            mScroller.forceFinished(true);
+            // Nothing the fling was heading for is wanted any more
+            cancelPendingTileDecodes();
         }
     }
 
-    private class RotateRunnable implements Runnable {
+    /**
+     * Animates the supp matrix from where it is now to a target that is worked out up front: scaled
+     * and rotated around a focal point, then brought back within bounds once. Each frame is
+     * interpolated from the captured start in decomposed space and written directly, and the last
+     * one writes the target verbatim, so frames never build on the rounding of earlier frames.
+     * <p>
+     * As every frame overwrites the supp matrix, starting one cancels a running fling or
+     * resampled drag, and flings are not started while one runs. Instances are reused through
+     * {@link #start}.
+     */
+    private class AnimatedTransform implements AnimationDriver.Animation {
+
+        private final TransformInterpolation mInterpolation = new TransformInterpolation();
+        private final TransformState mStart = new TransformState();
+        private final TransformState mFrame = new TransformState();
+        private final AffineMatrix mEnd = new AffineMatrix();
+        private final boolean mFinishOnCancel;
+        private int mDuration;
+        private Interpolator mInterpolator;
+        private long mStartTime;
+        private float mLastScale;
+
+        /**
+         * @param finishOnCancel whether cancelling should land on the end state, rather than stay put
+         */
+        AnimatedTransform(boolean finishOnCancel) {
+            mFinishOnCancel = finishOnCancel;
+        }
 
-        private final float rotation;
-        private final float startScale;
-        private final float endScale;
-        private final float focusX;
-        private final float focusY;
-        private final long startTime;
-        private float rotatedDegrees = 0;
-        public RotateRunnable(float rotation, float scaleResetFactor, float scaleFactor) {
-            startTime = SystemClock.elapsedRealtime();
-            this.rotation = rotation;
-            startScale = getScale();
-            endScale = scaleResetFactor * scaleFactor * startScale;
-            focusX = (mImageView.getRight()) / 2;
-            focusY = (mImageView.getBottom()) / 2;
+        /**
+         * Captures the current supp matrix and works out the end state from it. Call before
+         * handing the animation to the driver.
+         *
+         * @param scaleFactor scale of the end state, relative to the current scale
+         * @param degrees     rotation of the end state, relative to the current rotation
+         */
+        void start(float scaleFactor, float degrees, float focalX, float focalY,
+            int duration, Interpolator interpolator) {
+            mAnimationDriver.cancel(AnimationDriver.SLOT_FLING);
+            mAnimationDriver.cancel(AnimationDriver.SLOT_DRAG);
+            mDuration = duration;
+            mInterpolator = interpolator;
+            mStartTime = mAnimationDriver.now();
+            mLastScale = 1f;
+            if (mDecomposedStateEnabled) {
+                mStart.set(mSuppState);
+            } else {
+                mStart.set(mSuppMatrix);
+            }
+            mInterpolation.start(mStart, scaleFactor, degrees, focalX, focalY);
+            mInterpolation.getEnd().toMatrix(mEnd);
+            if (computeBoundsDelta(mEnd)) {
+                mInterpolation.setCorrection(mBoundsDeltaX, mBoundsDeltaY);
+            }
         }
 
         @Override
-        public void run() {
-            float t = interpolate();
-            float scale = startScale + t * (endScale - startScale);
-            float deltaScale = scale / getScale();
-            float rotate = t * rotation;
-            float deltaRotate = rotate - rotatedDegrees;
-            rotatedDegrees += deltaRotate;
-
-            if (mScaleChangeListener != null) {
-                mScaleChangeListener.onScaleChange(deltaScale, focusX, focusY);
-            }
-            mSuppMatrix.postScale(deltaScale, deltaScale, focusX, focusY);
-            mSuppMatrix.postRotate(deltaRotate, focusX, focusY);
-            checkAndDisplayMatrix();
+        public boolean onFrame(long frameTimeNanos) {
+            float t = interpolate(mStartTime, frameTimeNanos, mDuration, mInterpolator);
+            applyFraction(t);
+            // We haven't hit our target yet, so ask for another frame
+            return t < 1f;
+        }
 
-            if (t < 1f) {
-                Compat.postOnAnimation(mImageView, this);
+        @Override
+        public void onCancel() {
+            if (mFinishOnCancel) {
+                applyFraction(1f);
+                mAnimationDriver.requestFrame();
             }
         }
 
-        private float interpolate() {
-            float t = 1f * (SystemClock.elapsedRealtime() - startTime) / mRotateDuration;
-            t = Math.min(1f, t);
-            t = mRotateInterpolator.getInterpolation(t);
-            return t;
+        private void applyFraction(float t) {
+            mInterpolation.getState(t, mFrame);
+            setSupp(mFrame);
+            final float scale = mInterpolation.getScale(t);
+            if (mScaleChangeListener != null) {
+                mScaleChangeListener.onScaleChange(scale / mLastScale,
+                    mInterpolation.getFocalX(), mInterpolation.getFocalY());
+            }
+            mLastScale = scale;
         }
     }
 }
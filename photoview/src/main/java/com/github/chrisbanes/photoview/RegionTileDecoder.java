@@ -0,0 +1,161 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * {@link TileDecoder} backed by a pool of {@link BitmapRegionDecoder}s on a file. A single
+ * BitmapRegionDecoder serializes its decodes, so independent instances are opened on demand, up
+ * to the pool size, to decode several tiles at once.
+ */
+final class RegionTileDecoder implements TileDecoder {
+
+    // Beyond this, more decoders mostly compete for memory bandwidth
+    private static final int MAX_POOL_SIZE = 8;
+    // Share of the heap all decoders together may use for their copy of the encoded data
+    private static final int HEAP_FRACTION = 16;
+
+    private final String mPath;
+    private final int mPoolSize;
+    private final int mWidth;
+    private final int mHeight;
+    private final ArrayList<BitmapRegionDecoder> mIdle = new ArrayList<>();
+    private int mOpened;
+    private boolean mRecycled;
+
+    RegionTileDecoder(String path) throws IOException {
+        this(path, getDefaultPoolSize(new File(path).length()));
+    }
+
+    RegionTileDecoder(String path, int poolSize) throws IOException {
+        mPath = path;
+        mPoolSize = Math.max(1, poolSize);
+        // The first decoder is opened right away, which also validates the file
+        final BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mIdle.add(decoder);
+        mOpened = 1;
+    }
+
+    /**
+     * @param fileBytes size of the encoded image
+     * @return one decoder per core, but no more than the heap budget allows
+     */
+    static int getDefaultPoolSize(long fileBytes) {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final long budget = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+        final long byMemory = budget / Math.max(fileBytes, 1L);
+        return (int) Math.max(1L, Math.min(Math.min(cores, MAX_POOL_SIZE), byMemory));
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getTileSize() {
+        return TilePyramid.DEFAULT_TILE_SIZE;
+    }
+
+    @Override
+    public int getParallelism() {
+        return mPoolSize;
+    }
+
+    @Override
+    public Bitmap decodeTile(Tile tile, BitmapFactory.Options options) throws IOException {
+        final BitmapRegionDecoder decoder = acquire();
+        if (decoder == null) {
+            return null;
+        }
+        try {
+            return decoder.decodeRegion(tile.mRect, options);
+        } finally {
+            release(decoder);
+        }
+    }
+
+    @Override
+    public void recycle() {
+        synchronized (mIdle) {
+            mRecycled = true;
+            // Decoders still in use are recycled when they are released
+            for (int i = 0; i < mIdle.size(); i++) {
+                mIdle.get(i).recycle();
+            }
+            mIdle.clear();
+            mIdle.notifyAll();
+        }
+    }
+
+    /**
+     * @return an idle decoder, opening a new one if the pool is not full, or null once recycled
+     */
+    private BitmapRegionDecoder acquire() throws IOException {
+        synchronized (mIdle) {
+            while (!mRecycled && mIdle.isEmpty() && mOpened >= mPoolSize) {
+                try {
+                    mIdle.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if (mRecycled) {
+                return null;
+            }
+            if (!mIdle.isEmpty()) {
+                return mIdle.remove(mIdle.size() - 1);
+            }
+            mOpened++;
+        }
+        // Opening parses the headers, so do it outside the lock
+        try {
+            return BitmapRegionDecoder.newInstance(mPath, false);
+        } catch (IOException e) {
+            synchronized (mIdle) {
+                mOpened--;
+                mIdle.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void release(BitmapRegionDecoder decoder) {
+        synchronized (mIdle) {
+            if (mRecycled) {
+                decoder.recycle();
+                return;
+            }
+            mIdle.add(decoder);
+            mIdle.notifyAll();
+        }
+    }
+}
@@ -3,38 +3,133 @@ package com.github.chrisbanes.photoview;
 import android.util.SparseArray;
 
 import androidx.annotation.FloatRange;
+import androidx.annotation.NonNull;
 
+/**
+ * Immutable zoom configuration. Instances are built with a {@link Builder}, can be shared freely
+ * between views and threads, and are read by {@link PhotoViewAttacher} without locking or boxing.
+ * A {@link PhotoView} takes a snapshot of its configuration when it is initialized, so replacing
+ * the default afterwards only affects views initialized later.
+ */
 public final class ScaleConfig {
 
     public static final float SCALE_VALUE_MIN = 0.1f;
     public static final float SCALE_VALUE_MAX = 10f;
 
-    private static SparseArray<Float> sScaleLevels = new SparseArray<>();
+    public static final ScaleConfig DEFAULT = new ScaleConfig(ScaleLevels.DEFAULT);
 
-    static {
-        sScaleLevels.put(0, 1f);
-        sScaleLevels.put(1, 4f);
+    private static volatile ScaleConfig sDefault = DEFAULT;
+
+    private final ScaleLevels mLevels;
+
+    private ScaleConfig(ScaleLevels levels) {
+        mLevels = levels;
+    }
+
+    /**
+     * @return the configuration used by {@link PhotoView#initialize()}
+     */
+    @NonNull
+    public static ScaleConfig getDefault() {
+        return sDefault;
     }
 
+    /**
+     * Replaces the configuration used by {@link PhotoView#initialize()}. Safe to call from any
+     * thread; views that are already initialized keep the configuration they were given.
+     */
+    public static void setDefault(@NonNull ScaleConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("ScaleConfig cannot be null");
+        }
+        sDefault = config;
+    }
+
+    /**
+     * @return a copy of the default scale levels, keyed by level
+     * @deprecated use {@link #getDefault()}
+     */
+    @Deprecated
     public static SparseArray<Float> getScaleLevels() {
-        return sScaleLevels;
+        return sDefault.mLevels.toSparseArray();
+    }
+
+    /**
+     * @deprecated build a configuration with {@link Builder} and pass it to
+     * {@link #setDefault(ScaleConfig)}
+     */
+    @Deprecated
+    public static void setScaleLevels(
+        @FloatRange(from = SCALE_VALUE_MIN, to = SCALE_VALUE_MAX) float... scaleLevels) {
+        setDefault(new Builder().setScaleLevels(scaleLevels).build());
+    }
+
+    public int getLevelCount() {
+        return mLevels.size();
+    }
+
+    public float getMinScale() {
+        return mLevels.getMin();
+    }
+
+    public float getMaxScale() {
+        return mLevels.getMax();
     }
 
-    public static void setScaleLevels(float... scaleLevels) {
-        if (scaleLevels.length < 2) {
-            throw new IllegalArgumentException("At least two levels are required");
+    public float getScaleAtLevel(int level) {
+        return mLevels.get(level);
+    }
+
+    /**
+     * @return the highest level whose scale is not bigger than {@code scale}, or -1 if it is below
+     * the lowest level
+     */
+    public int getLevelByScale(float scale) {
+        return mLevels.getLevel(scale);
+    }
+
+    ScaleLevels getLevels() {
+        return mLevels;
+    }
+
+    public static final class Builder {
+
+        private ScaleLevels mLevels = ScaleLevels.DEFAULT;
+
+        public Builder() {
         }
-        for (int i = 0; i < scaleLevels.length; ++i) {
-            for (int j = 0; j < i; ++j) {
-                if (scaleLevels[i]<= scaleLevels[j])
-                    throw new IllegalArgumentException(String.format("Scale level %d value must " +
-                            "bigger than scale level %d value", i, j));
-            }
-            setScaleLevel(i, scaleLevels[i]);
+
+        public Builder(@NonNull ScaleConfig config) {
+            mLevels = config.mLevels;
+        }
+
+        /**
+         * @param scaleLevels scale of each level, strictly increasing and within
+         *                    [{@link #SCALE_VALUE_MIN}, {@link #SCALE_VALUE_MAX}]
+         * @throws IllegalArgumentException if a scale is out of range or not bigger than the one
+         *                                  before it
+         */
+        public Builder setScaleLevels(
+            @FloatRange(from = SCALE_VALUE_MIN, to = SCALE_VALUE_MAX) float... scaleLevels) {
+            mLevels = ScaleLevels.of(scaleLevels);
+            return this;
         }
-    }
 
-    private static void setScaleLevel(int key, @FloatRange(from = SCALE_VALUE_MIN, to = SCALE_VALUE_MAX) float scale) {
-        sScaleLevels.put(key, scale);
+        /**
+         * Compatibility adapter for the {@link SparseArray} based API, where the keys are the levels
+         *
+         * @param scaleLevels scale of each level keyed by level, with keys 0 to
+         *                    {@code size() - 1} and no gaps
+         * @throws IllegalArgumentException if the keys have gaps, or a scale is out of range or not
+         *                                  bigger than the one before it
+         */
+        public Builder setScaleLevels(@NonNull SparseArray<Float> scaleLevels) {
+            mLevels = ScaleLevels.of(scaleLevels);
+            return this;
+        }
+
+        public ScaleConfig build() {
+            return new ScaleConfig(mLevels);
+        }
     }
 }
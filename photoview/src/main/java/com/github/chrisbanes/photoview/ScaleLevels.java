@@ -0,0 +1,135 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.util.SparseArray;
+
+import static com.github.chrisbanes.photoview.ScaleConfig.SCALE_VALUE_MAX;
+import static com.github.chrisbanes.photoview.ScaleConfig.SCALE_VALUE_MIN;
+
+/**
+ * Immutable, strictly increasing table of zoom levels. It is validated once when it is created,
+ * after which every lookup works on a primitive array without boxing or allocating.
+ */
+final class ScaleLevels {
+
+    static final ScaleLevels DEFAULT = of(1f, 4f);
+
+    private final float[] mLevels;
+
+    private ScaleLevels(float[] levels) {
+        mLevels = levels;
+    }
+
+    /**
+     * @param levels scale of each level, strictly increasing and within
+     *               [{@link ScaleConfig#SCALE_VALUE_MIN}, {@link ScaleConfig#SCALE_VALUE_MAX}].
+     *               The array is copied.
+     */
+    static ScaleLevels of(float... levels) {
+        final float[] copy = new float[levels.length];
+        System.arraycopy(levels, 0, copy, 0, levels.length);
+        validate(copy);
+        return new ScaleLevels(copy);
+    }
+
+    /**
+     * Compatibility adapter for the {@link SparseArray} based API, where the keys are the levels.
+     *
+     * @param levels scales keyed by level; the keys must be exactly 0 to {@code size() - 1}
+     */
+    static ScaleLevels of(SparseArray<Float> levels) {
+        final float[] copy = new float[levels.size()];
+        for (int i = 0; i < copy.length; ++i) {
+            // Keys are kept sorted, so any gap or negative key shows up as a mismatch here
+            if (levels.keyAt(i) != i) {
+                throw new IllegalArgumentException(String.format("Scale levels must be keyed 0 "
+                        + "to %d without gaps, found key %d at index %d", copy.length - 1,
+                        levels.keyAt(i), i));
+            }
+            final Float level = levels.valueAt(i);
+            if (level == null) {
+                throw new IllegalArgumentException(String.format("Scale level %d is null", i));
+            }
+            copy[i] = level;
+        }
+        validate(copy);
+        return new ScaleLevels(copy);
+    }
+
+    private static void validate(float[] levels) {
+        if (levels.length < 2) {
+            throw new IllegalArgumentException("At least two levels are required");
+        }
+        for (int i = 0; i < levels.length; ++i) {
+            final float level = levels[i];
+            if (!(level >= SCALE_VALUE_MIN && level <= SCALE_VALUE_MAX)) {
+                throw new IllegalArgumentException(String.format("scaleLevel value must between %f and %f",
+                        SCALE_VALUE_MIN, SCALE_VALUE_MAX));
+            }
+            // Strictly increasing against the previous one implies against all earlier ones
+            if (i > 0 && level <= levels[i - 1]) {
+                throw new IllegalArgumentException(String.format("Scale level %d value must " +
+                        "bigger than scale level %d value", i, i - 1));
+            }
+        }
+    }
+
+    int size() {
+        return mLevels.length;
+    }
+
+    float get(int level) {
+        return mLevels[level];
+    }
+
+    float getMin() {
+        return mLevels[0];
+    }
+
+    float getMax() {
+        return mLevels[mLevels.length - 1];
+    }
+
+    /**
+     * @return the highest level whose scale is not bigger than {@code scale}, or -1 if
+     * {@code scale} is below the lowest level
+     */
+    int getLevel(float scale) {
+        int low = 0;
+        int high = mLevels.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mLevels[mid] <= scale) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return a new {@link SparseArray} holding the levels, for the compatibility API
+     */
+    SparseArray<Float> toSparseArray() {
+        final SparseArray<Float> array = new SparseArray<>(mLevels.length);
+        for (int i = 0; i < mLevels.length; ++i) {
+            array.put(i, mLevels[i]);
+        }
+        return array;
+    }
+}
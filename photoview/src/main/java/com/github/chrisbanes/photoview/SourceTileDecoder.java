@@ -0,0 +1,144 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.io.IOException;
+
+/**
+ * {@link TileDecoder} for a pyramid that is already cut, such as a {@link TilePack} or a remote
+ * {@link TileSource}. The pyramids match, so every tile is loaded as it is. Only the base layer,
+ * which covers the whole image, is put together from the tiles of its level.
+ */
+final class SourceTileDecoder implements TileDecoder {
+
+    private final TileSource mSource;
+
+    SourceTileDecoder(TileSource source) {
+        mSource = source;
+    }
+
+    @Override
+    public int getWidth() {
+        return mSource.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mSource.getHeight();
+    }
+
+    @Override
+    public int getTileSize() {
+        return mSource.getTileSize();
+    }
+
+    @Override
+    public int getParallelism() {
+        return mSource.getParallelism();
+    }
+
+    @Override
+    public Bitmap decodeTile(Tile tile, BitmapFactory.Options options) throws IOException {
+        // Tiles are already at their level's resolution
+        options.inSampleSize = 1;
+        if (!tile.mBaseLayer) {
+            return mSource.loadTile(tile, options);
+        }
+
+        final int sampleSize = TilePyramid.getSampleSize(tile.mLevel);
+        final int extent = mSource.getTileSize() << tile.mLevel;
+        final int width = mSource.getWidth();
+        final int height = mSource.getHeight();
+        final int columns = (width + extent - 1) / extent;
+        final int rows = (height + extent - 1) / extent;
+
+        final BitmapFactory.Options tileOptions = new BitmapFactory.Options();
+        tileOptions.inPreferredConfig = options.inPreferredConfig;
+        final Bitmap result = Bitmap.createBitmap(Math.max(1, width / sampleSize),
+            Math.max(1, height / sampleSize), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(result);
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final RectF destination = new RectF();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (tile.mCancelled) {
+                    result.recycle();
+                    return null;
+                }
+                final Bitmap part = mSource.loadTile(new PartRequest(tile, column, row),
+                    tileOptions);
+                if (part == null) {
+                    continue;
+                }
+                final float left = column * extent;
+                final float top = row * extent;
+                destination.set(left / sampleSize, top / sampleSize,
+                    Math.min(left + extent, width) / sampleSize,
+                    Math.min(top + extent, height) / sampleSize);
+                canvas.drawBitmap(part, null, destination, paint);
+                part.recycle();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void recycle() {
+        // Sources hold no resources that need releasing
+    }
+
+    /**
+     * One tile of the base layer, cancelled along with it
+     */
+    private static final class PartRequest implements TileSource.Request {
+
+        private final Tile mBaseLayer;
+        private final int mColumn;
+        private final int mRow;
+
+        PartRequest(Tile baseLayer, int column, int row) {
+            mBaseLayer = baseLayer;
+            mColumn = column;
+            mRow = row;
+        }
+
+        @Override
+        public int getLevel() {
+            return mBaseLayer.mLevel;
+        }
+
+        @Override
+        public int getColumn() {
+            return mColumn;
+        }
+
+        @Override
+        public int getRow() {
+            return mRow;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mBaseLayer.mCancelled;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * One tile of a {@link TilePyramid}. Everything but {@link #mCancelled} is only touched on the main
+ * thread; the decode thread only reads the immutable position.
+ */
+final class Tile implements TileSource.Request {
+
+    final int mLevel;
+    final int mColumn;
+    final int mRow;
+    final long mKey;
+    /**
+     * Whether this is the downsampled whole image drawn under all other tiles
+     */
+    final boolean mBaseLayer;
+    /**
+     * Region of the full resolution image this tile covers
+     */
+    final Rect mRect = new Rect();
+
+    Bitmap mBitmap;
+    volatile boolean mCancelled;
+    /**
+     * Decoded ahead of time for where the viewport is heading, not for what is visible now
+     */
+    volatile boolean mPrefetch;
+    /**
+     * What the prefetch was for, so it can be cancelled along with the others for the same reason
+     */
+    int mPrefetchGroup;
+
+    Tile(TilePyramid pyramid, int level, int column, int row) {
+        mLevel = level;
+        mColumn = column;
+        mRow = row;
+        mKey = key(level, column, row);
+        mBaseLayer = false;
+        pyramid.getTileRect(level, column, row, mRect);
+    }
+
+    /**
+     * Creates the base layer: the whole image at {@code level}
+     */
+    Tile(TilePyramid pyramid, int level) {
+        mLevel = level;
+        mColumn = 0;
+        mRow = 0;
+        mKey = -1L;
+        mBaseLayer = true;
+        mRect.set(0, 0, pyramid.getWidth(), pyramid.getHeight());
+    }
+
+    @Override
+    public int getLevel() {
+        return mLevel;
+    }
+
+    @Override
+    public int getColumn() {
+        return mColumn;
+    }
+
+    @Override
+    public int getRow() {
+        return mRow;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    boolean isLoaded() {
+        return mBitmap != null;
+    }
+
+    /**
+     * Packs a tile position into a single key: 8 bits of level, 28 bits each of column and row.
+     */
+    static long key(int level, int column, int row) {
+        return ((long) level << 56) | ((long) column << 28) | row;
+    }
+}
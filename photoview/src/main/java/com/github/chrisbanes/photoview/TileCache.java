@@ -0,0 +1,134 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache, sized in bytes, of decoded tiles that have scrolled out of view, so panning back does
+ * not decode them again. Tiles that are on screen are not in here. The bitmaps of evicted tiles go
+ * to a {@link BitmapPool} to be decoded into again. Main thread only.
+ */
+final class TileCache {
+
+    // Access ordered, so iteration starts at the least recently used tile
+    private final LinkedHashMap<Long, Tile> mTiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final BitmapPool mPool;
+    private int mMaxBytes;
+    private int mBytes;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    TileCache(int maxBytes, BitmapPool pool) {
+        mMaxBytes = maxBytes;
+        mPool = pool;
+    }
+
+    /**
+     * @return whether a tile is cached, without counting a hit or miss
+     */
+    boolean contains(long key) {
+        return mTiles.containsKey(key);
+    }
+
+    /**
+     * Removes and returns a cached tile, counting the hit or miss
+     */
+    Tile take(long key) {
+        final Tile tile = mTiles.remove(key);
+        if (tile == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        mBytes -= BitmapPool.getBytes(tile.mBitmap);
+        return tile;
+    }
+
+    /**
+     * Adds a loaded tile, evicting the least recently used tiles if that goes over budget
+     */
+    void put(Tile tile) {
+        final Tile previous = mTiles.put(tile.mKey, tile);
+        if (previous != null) {
+            mBytes -= BitmapPool.getBytes(previous.mBitmap);
+            release(previous);
+        }
+        mBytes += BitmapPool.getBytes(tile.mBitmap);
+        trimToSize(mMaxBytes);
+    }
+
+    void setMaxBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    int getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Shrinks the cache, and the pool, for a {@link ComponentCallbacks2} trim level
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(0);
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxBytes / 4);
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            trimToSize(mMaxBytes / 2);
+        }
+    }
+
+    void trimToSize(int maxBytes) {
+        final Iterator<Map.Entry<Long, Tile>> iterator = mTiles.entrySet().iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            final Tile tile = iterator.next().getValue();
+            iterator.remove();
+            mBytes -= BitmapPool.getBytes(tile.mBitmap);
+            mEvictionCount++;
+            release(tile);
+        }
+    }
+
+    int getHitCount() {
+        return mHitCount;
+    }
+
+    int getMissCount() {
+        return mMissCount;
+    }
+
+    int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void release(Tile tile) {
+        mPool.put(tile.mBitmap);
+        tile.mBitmap = null;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tile decodes on a bounded pool of background threads, always picking the most useful
+ * pending tile next rather than the oldest one.
+ * <p>
+ * Priorities are worked out when a thread becomes free, against the latest viewport, so a tile
+ * queued long ago near the old center does not jump ahead of what is on screen now. Tiles that get
+ * {@link Tile#mCancelled cancelled} while they wait are dropped without being decoded. A decode
+ * that already started is not interrupted, though a {@link TileSource} may notice and stop early;
+ * its result is handed back and the caller discards it.
+ */
+final class TileDecodeScheduler {
+
+    interface Worker {
+        /**
+         * Decodes a tile. Called on a background thread.
+         */
+        void decodeTile(Tile tile);
+    }
+
+    // A tile one level away from the viewport's level ranks behind any tile on that level within
+    // this many tiles of the center
+    private static final float LEVEL_PENALTY = 64f;
+    // Prefetches only run once nothing that is visible is waiting
+    private static final float PREFETCH_PENALTY = 1024f;
+
+    private final Object mLock = new Object();
+    private final ArrayList<Tile> mPending = new ArrayList<>();
+    private final ThreadPoolExecutor mExecutor;
+    private final Worker mWorker;
+    private float mCenterX, mCenterY;
+    private float mTileExtent = 1f;
+    private int mLevel;
+
+    // Every execution takes the best pending tile, so one instance serves every request
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            final Tile tile = pollBest();
+            if (tile != null) {
+                mWorker.decodeTile(tile);
+            }
+        }
+    };
+
+    /**
+     * @param threads      most decodes that run at the same time
+     * @param worker       does the decoding
+     * @param onTerminated run on a background thread once {@link #shutdown()} was called and no
+     *                     decode is running any more
+     */
+    TileDecodeScheduler(int threads, Worker worker, final Runnable onTerminated) {
+        mWorker = worker;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "PhotoView tile decoder");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }) {
+            @Override
+            protected void terminated() {
+                onTerminated.run();
+            }
+        };
+    }
+
+    /**
+     * Updates what the priorities are measured against. Takes effect for the next tile picked.
+     *
+     * @param centerX    center of the viewport, in full resolution image pixels
+     * @param centerY    center of the viewport, in full resolution image pixels
+     * @param level      pyramid level the viewport is drawn at
+     * @param tileExtent size of a tile at that level, in full resolution image pixels
+     */
+    void setViewport(float centerX, float centerY, int level, int tileExtent) {
+        synchronized (mLock) {
+            mCenterX = centerX;
+            mCenterY = centerY;
+            mLevel = level;
+            mTileExtent = tileExtent;
+        }
+    }
+
+    void schedule(Tile tile) {
+        synchronized (mLock) {
+            mPending.add(tile);
+        }
+        mExecutor.execute(mDrainTask);
+    }
+
+    /**
+     * Drops every waiting tile that has been cancelled, instead of when a thread gets to it
+     */
+    void purgeCancelled() {
+        synchronized (mLock) {
+            for (int i = mPending.size() - 1; i >= 0; i--) {
+                if (mPending.get(i).mCancelled) {
+                    mPending.remove(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every waiting tile and stops the threads once running decodes finish
+     */
+    void shutdown() {
+        synchronized (mLock) {
+            mPending.clear();
+        }
+        mExecutor.shutdown();
+    }
+
+    private Tile pollBest() {
+        synchronized (mLock) {
+            Tile best = null;
+            int bestIndex = -1;
+            float bestPriority = Float.MAX_VALUE;
+            for (int i = mPending.size() - 1; i >= 0; i--) {
+                final Tile tile = mPending.get(i);
+                if (tile.mCancelled) {
+                    mPending.remove(i);
+                    if (bestIndex > i) {
+                        bestIndex--;
+                    }
+                    continue;
+                }
+                final float priority = getPriority(tile);
+                if (priority < bestPriority) {
+                    best = tile;
+                    bestIndex = i;
+                    bestPriority = priority;
+                }
+            }
+            if (best != null) {
+                mPending.remove(bestIndex);
+            }
+            return best;
+        }
+    }
+
+    /**
+     * @return lower is more urgent
+     */
+    private float getPriority(Tile tile) {
+        if (tile.mBaseLayer) {
+            // Ahead of everything, so something shows as soon as possible
+            return -1f;
+        }
+        final float dx = tile.mRect.exactCenterX() - mCenterX;
+        final float dy = tile.mRect.exactCenterY() - mCenterY;
+        final float distance = (float) Math.hypot(dx, dy) / mTileExtent;
+        final float priority = Math.abs(tile.mLevel - mLevel) * LEVEL_PENALTY + distance;
+        return tile.mPrefetch ? priority + PREFETCH_PENALTY : priority;
+    }
+}
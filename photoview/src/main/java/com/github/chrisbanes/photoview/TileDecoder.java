@@ -0,0 +1,52 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+
+/**
+ * Decodes the tiles of a large image. Calls come from background threads, at most
+ * {@link #getParallelism()} at a time.
+ */
+interface TileDecoder {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return the tile size the pyramid should use, in level pixels
+     */
+    int getTileSize();
+
+    /**
+     * @return how many {@link #decodeTile} calls can usefully run at the same time
+     */
+    int getParallelism();
+
+    /**
+     * @param tile    the tile to decode, which may be the base layer
+     * @param options decode options, with inSampleSize set to the level's sample size for decoders
+     *                that read the full resolution image
+     * @return the decoded tile, or null if it could not be decoded
+     */
+    Bitmap decodeTile(Tile tile, BitmapFactory.Options options) throws IOException;
+
+    void recycle();
+}
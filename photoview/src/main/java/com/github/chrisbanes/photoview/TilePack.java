@@ -0,0 +1,211 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a tile pack written by the {@code tilepacker} tool: a whole tile pyramid,
+ * already cut and encoded, in one memory-mapped file. Tiles are handed out as slices of the
+ * mapping, so a tile is never read into an array of its own up front; the decoder still copies it
+ * through its stream buffer, a chunk at a time, while decoding. See the tool for the file layout.
+ * <p>
+ * Tiles are stored level by level, row by row, so a tile's index entry is found by arithmetic
+ * rather than by searching. The index is checked once when the pack is opened. Safe to use from
+ * any thread.
+ */
+final class TilePack implements TileSource {
+
+    // Decoding small, independent streams scales with cores, up to a point
+    private static final int MAX_PARALLELISM = 4;
+
+    private static final int MAGIC = 0x50565450;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 7 * 4;
+    private static final int INDEX_ENTRY_BYTES = 3 * 4 + 8 + 4;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTileSize;
+    private final int mLevelCount;
+    // Index entry of the first tile of every level
+    private final int[] mLevelStarts;
+
+    private TilePack(MappedByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a tile pack");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported tile pack version " + buffer.getInt(4));
+        }
+        mWidth = buffer.getInt(8);
+        mHeight = buffer.getInt(12);
+        mTileSize = buffer.getInt(16);
+        mLevelCount = buffer.getInt(20);
+        final int tileCount = buffer.getInt(24);
+        if (mWidth <= 0 || mHeight <= 0 || mTileSize <= 0 || mLevelCount <= 0
+            || mLevelCount != new TilePyramid(mWidth, mHeight, mTileSize).getMaxLevel() + 1) {
+            throw new IOException("Corrupt tile pack header");
+        }
+        mLevelStarts = new int[mLevelCount];
+        int entry = 0;
+        for (int level = 0; level < mLevelCount; level++) {
+            mLevelStarts[level] = entry;
+            entry += getColumnCount(level) * getRowCount(level);
+        }
+        if (entry != tileCount
+            || HEADER_BYTES + (long) tileCount * INDEX_ENTRY_BYTES > buffer.capacity()) {
+            throw new IOException("Corrupt tile pack index");
+        }
+        validateIndex();
+    }
+
+    /**
+     * @return whether the file starts like a tile pack
+     */
+    static boolean isTilePack(File file) {
+        if (file.length() < HEADER_BYTES) {
+            return false;
+        }
+        try {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final byte[] magic = new byte[4];
+                return in.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static TilePack open(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Tile packs larger than 2 GB are not supported");
+            }
+            // The mapping stays valid after the channel is closed
+            return new TilePack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    @Override
+    public int getParallelism() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM);
+    }
+
+    @Override
+    public Bitmap loadTile(@NonNull Request request, @NonNull BitmapFactory.Options options) {
+        final ByteBuffer bytes = getTile(request.getLevel(), request.getColumn(),
+            request.getRow());
+        if (bytes == null) {
+            return null;
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(bytes), null, options);
+    }
+
+    int getLevelCount() {
+        return mLevelCount;
+    }
+
+    int getColumnCount(int level) {
+        final int extent = mTileSize << level;
+        return (mWidth + extent - 1) / extent;
+    }
+
+    int getRowCount(int level) {
+        final int extent = mTileSize << level;
+        return (mHeight + extent - 1) / extent;
+    }
+
+    /**
+     * @return the encoded tile as a read-only slice of the mapping, or null if there is no such
+     * tile. Each call returns a new buffer, so callers on different threads do not interfere.
+     */
+    ByteBuffer getTile(int level, int column, int row) {
+        if (level < 0 || level >= mLevelCount || column < 0 || column >= getColumnCount(level)
+            || row < 0 || row >= getRowCount(level)) {
+            return null;
+        }
+        final int position = getEntryPosition(mLevelStarts[level] + row * getColumnCount(level)
+            + column);
+        final int offset = (int) mBuffer.getLong(position + 12);
+        final int length = mBuffer.getInt(position + 20);
+        final ByteBuffer tile = mBuffer.asReadOnlyBuffer();
+        tile.limit(offset + length);
+        tile.position(offset);
+        return tile.slice();
+    }
+
+    private static int getEntryPosition(int entry) {
+        return HEADER_BYTES + entry * INDEX_ENTRY_BYTES;
+    }
+
+    private void validateIndex() throws IOException {
+        final long size = mBuffer.capacity();
+        for (int level = 0; level < mLevelCount; level++) {
+            final int columns = getColumnCount(level);
+            final int rows = getRowCount(level);
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    final int position = getEntryPosition(mLevelStarts[level] + row * columns
+                        + column);
+                    final long offset = mBuffer.getLong(position + 12);
+                    final int length = mBuffer.getInt(position + 20);
+                    if (mBuffer.getInt(position) != level
+                        || mBuffer.getInt(position + 4) != column
+                        || mBuffer.getInt(position + 8) != row
+                        || offset < 0 || length < 0 || offset + length > size) {
+                        throw new IOException("Corrupt tile pack index");
+                    }
+                }
+            }
+        }
+    }
+}
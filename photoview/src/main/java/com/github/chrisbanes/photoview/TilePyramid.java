@@ -0,0 +1,131 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Rect;
+
+/**
+ * Layout of a tiled image. Level 0 is the full resolution image, and every level above it halves
+ * the resolution, so level {@code L} is decoded with an inSampleSize of {@code 2^L}. At every
+ * level a tile is {@code tileSize} pixels square (smaller at the right and bottom edges), which
+ * means it covers {@code tileSize << L} pixels of the full resolution image.
+ */
+final class TilePyramid {
+
+    static final int DEFAULT_TILE_SIZE = 256;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTileSize;
+    private final int mMaxLevel;
+
+    TilePyramid(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Image and tile sizes must be positive");
+        }
+        mWidth = width;
+        mHeight = height;
+        mTileSize = tileSize;
+        // The top level is the first one where the whole image fits in a single tile
+        int level = 0;
+        while ((Math.max(width, height) >> level) > tileSize) {
+            level++;
+        }
+        mMaxLevel = level;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getTileSize() {
+        return mTileSize;
+    }
+
+    int getMaxLevel() {
+        return mMaxLevel;
+    }
+
+    static int getSampleSize(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * @param scale view pixels per full resolution image pixel
+     * @return the coarsest level that still has at least one image pixel per view pixel
+     */
+    int getLevelForScale(float scale) {
+        if (scale <= 0f) {
+            return mMaxLevel;
+        }
+        final float samples = 1f / scale;
+        int level = 0;
+        while (level < mMaxLevel && getSampleSize(level + 1) <= samples) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return the size of a tile at {@code level}, in full resolution image pixels
+     */
+    int getTileExtent(int level) {
+        return mTileSize << level;
+    }
+
+    int getColumnCount(int level) {
+        final int extent = getTileExtent(level);
+        return (mWidth + extent - 1) / extent;
+    }
+
+    int getRowCount(int level) {
+        final int extent = getTileExtent(level);
+        return (mHeight + extent - 1) / extent;
+    }
+
+    /**
+     * @return the column holding image x coordinate {@code x}, clamped to the image
+     */
+    int getColumn(int level, float x) {
+        return clamp((int) Math.floor(x / getTileExtent(level)), getColumnCount(level) - 1);
+    }
+
+    /**
+     * @return the row holding image y coordinate {@code y}, clamped to the image
+     */
+    int getRow(int level, float y) {
+        return clamp((int) Math.floor(y / getTileExtent(level)), getRowCount(level) - 1);
+    }
+
+    /**
+     * Writes the full resolution image region covered by a tile into {@code out}
+     */
+    void getTileRect(int level, int column, int row, Rect out) {
+        final int extent = getTileExtent(level);
+        out.left = column * extent;
+        out.top = row * extent;
+        out.right = Math.min(out.left + extent, mWidth);
+        out.bottom = Math.min(out.top + extent, mHeight);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * An image that is already cut into a tile pyramid, such as one served by a DeepZoom or IIIF
+ * server. Show it with {@link PhotoView#setTiledImage(TileSource)}.
+ * <p>
+ * Level 0 is the full resolution image and every level above it halves the resolution. At every
+ * level a tile is {@link #getTileSize()} pixels square, smaller at the right and bottom edges, so
+ * at level {@code L} the tile in column {@code c} starts at full resolution x coordinate
+ * {@code c * (tileSize << L)}. Levels go up to the first one where the whole image fits in a
+ * single tile.
+ */
+public interface TileSource {
+
+    /**
+     * @return width of the full resolution image
+     */
+    int getWidth();
+
+    /**
+     * @return height of the full resolution image
+     */
+    int getHeight();
+
+    int getTileSize();
+
+    /**
+     * @return how many tiles may be loaded at the same time
+     */
+    int getParallelism();
+
+    /**
+     * Loads one tile. Called on a background thread, at most {@link #getParallelism()} at a time.
+     *
+     * @param request the tile to load; a load whose request got cancelled may stop early and
+     *                return null
+     * @param options decode options, with inSampleSize of 1 and possibly an inBitmap of the
+     *                tile's size to decode into
+     * @return the tile at its level's resolution, or null if it is not available
+     */
+    @Nullable
+    Bitmap loadTile(@NonNull Request request, @NonNull BitmapFactory.Options options)
+        throws IOException;
+
+    /**
+     * A tile that is wanted
+     */
+    interface Request {
+
+        int getLevel();
+
+        int getColumn();
+
+        int getRow();
+
+        /**
+         * @return whether the tile is no longer wanted, usually because it left the viewport
+         */
+        boolean isCancelled();
+    }
+}
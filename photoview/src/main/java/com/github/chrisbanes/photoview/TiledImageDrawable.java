@@ -0,0 +1,604 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A drawable for images too large to decode in one go. Its intrinsic size is the full resolution
+ * image, so {@link PhotoViewAttacher} lays it out and transforms it like any other drawable, but
+ * only the tiles that are visible are decoded, at the resolution the current scale needs.
+ * <p>
+ * The attacher reports the visible part of the image every time it applies a new matrix, and the
+ * tiles are drawn through that same matrix, so zooming, flinging and rotating work unchanged.
+ * Call {@link #recycle()} when the drawable is no longer used; {@link PhotoView#setTiledImage}
+ * does that for you.
+ */
+public class TiledImageDrawable extends Drawable {
+
+    /**
+     * Prefetch group for tiles a fling is heading for
+     */
+    static final int PREFETCH_FLING = 1;
+    /**
+     * Prefetch group for tiles a double tap would zoom in on
+     */
+    static final int PREFETCH_ZOOM = 2;
+
+    private final TileDecoder mDecoder;
+    private final TilePyramid mPyramid;
+    // Decoded tiles of this image on disk, null if not used
+    private final DiskTileCache mDiskCache;
+    private final String mDiskCacheKey;
+    private final TileDecodeScheduler mScheduler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final BitmapPool mBitmapPool;
+    // Loaded tiles that are no longer visible
+    private final TileCache mCache;
+
+    // Every tile that is visible, loaded or not, keyed by Tile.key(). Primitive keys, so looking
+    // tiles up on every viewport change does not box a Long each time.
+    private final LongSparseArray<Tile> mTiles = new LongSparseArray<>();
+    // The wanted tiles, in drawing order
+    private final ArrayList<Tile> mVisibleTiles = new ArrayList<>();
+    // Tiles being decoded ahead of the viewport, they go to mCache when done
+    private final LongSparseArray<Tile> mPrefetchTiles = new LongSparseArray<>();
+    private int mLevel = -1;
+    private int mFirstColumn, mLastColumn, mFirstRow, mLastRow;
+    private boolean mRecycled;
+    // Downsampled whole image, drawn under the tiles. Levels from mBaseLevel up need no tiles.
+    private Tile mBaseLayer;
+    private int mBaseLevel = Integer.MAX_VALUE;
+    // Last viewport, to work out the tiles again if the base layer fails
+    private final RectF mViewportRect = new RectF();
+    private float mViewportScale;
+    private final RectF mTempRect = new RectF();
+
+    /**
+     * @param path path of a JPEG or PNG file, or of a tile pack made by the {@code tilepacker}
+     *             tool
+     * @throws IOException if the image cannot be opened
+     */
+    public TiledImageDrawable(@NonNull String path) throws IOException {
+        this(path, null);
+    }
+
+    /**
+     * @param path      path of a JPEG or PNG file, or of a tile pack made by the
+     *                  {@code tilepacker} tool
+     * @param diskCache where to keep decoded tiles for the next time this image is shown, may be
+     *                  null
+     * @throws IOException if the image cannot be opened
+     */
+    public TiledImageDrawable(@NonNull String path, @Nullable DiskTileCache diskCache)
+        throws IOException {
+        this(openDecoder(path), diskCache, new File(path));
+    }
+
+    /**
+     * @param source an image that is already cut into tiles, such as a {@link DeepZoomTileSource}
+     *               or an {@link IiifTileSource}
+     */
+    public TiledImageDrawable(@NonNull TileSource source) {
+        this(new SourceTileDecoder(source));
+    }
+
+    TiledImageDrawable(TileDecoder decoder) {
+        this(decoder, null, null);
+    }
+
+    private TiledImageDrawable(TileDecoder decoder, DiskTileCache diskCache, File source) {
+        mDecoder = decoder;
+        mPyramid = new TilePyramid(decoder.getWidth(), decoder.getHeight(),
+            decoder.getTileSize());
+        mDiskCache = diskCache;
+        mDiskCacheKey = diskCache != null
+            ? DiskTileCache.getSourceKey(source, decoder.getTileSize()) : null;
+        final int cacheBytes = getDefaultCacheBytes();
+        mBitmapPool = new BitmapPool(cacheBytes / 4);
+        mCache = new TileCache(cacheBytes, mBitmapPool);
+        mScheduler = new TileDecodeScheduler(decoder.getParallelism(), mWorker, new Runnable() {
+            @Override
+            public void run() {
+                // No decode is running any more
+                mDecoder.recycle();
+            }
+        });
+    }
+
+    private static TileDecoder openDecoder(String path) throws IOException {
+        final File file = new File(path);
+        if (TilePack.isTilePack(file)) {
+            return new SourceTileDecoder(TilePack.open(file));
+        }
+        return new RegionTileDecoder(path);
+    }
+
+    private static int getDefaultCacheBytes() {
+        return (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sets the budget for tiles that have scrolled out of view but are kept in case they come back.
+     * A quarter of that is allowed again for spare bitmaps kept to decode new tiles into. The
+     * default is an eighth of the heap.
+     *
+     * @param maxBytes budget in bytes
+     */
+    public void setTileCacheSize(int maxBytes) {
+        mCache.setMaxBytes(maxBytes);
+        mBitmapPool.setMaxBytes(maxBytes / 4);
+    }
+
+    public int getTileCacheSize() {
+        return mCache.getMaxBytes();
+    }
+
+    /**
+     * @return the bytes currently held by cached tiles
+     */
+    public int getTileCacheBytes() {
+        return mCache.getBytes();
+    }
+
+    /**
+     * @return how often a tile that came into view was found in the cache
+     */
+    public int getTileCacheHitCount() {
+        return mCache.getHitCount();
+    }
+
+    /**
+     * @return how often a tile that came into view had to be decoded
+     */
+    public int getTileCacheMissCount() {
+        return mCache.getMissCount();
+    }
+
+    /**
+     * @return how often a cached tile was dropped to stay within budget
+     */
+    public int getTileCacheEvictionCount() {
+        return mCache.getEvictionCount();
+    }
+
+    /**
+     * Releases cached tiles according to a {@link android.content.ComponentCallbacks2} trim level.
+     * {@link PhotoView#setTiledImage} registers for these.
+     */
+    public void trimMemory(int level) {
+        mCache.trimMemory(level);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mPyramid.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mPyramid.getHeight();
+    }
+
+    /**
+     * Called by the attacher whenever the draw matrix changes
+     *
+     * @param visibleRect part of the image that is visible, in full resolution image pixels
+     * @param scale       view pixels per full resolution image pixel
+     */
+    void setViewport(RectF visibleRect, float scale) {
+        if (mRecycled) {
+            return;
+        }
+        mViewportRect.set(visibleRect);
+        mViewportScale = scale;
+        if (!visibleRect.intersect(0f, 0f, mPyramid.getWidth(), mPyramid.getHeight())) {
+            if (mLevel != -1) {
+                mLevel = -1;
+                mVisibleTiles.clear();
+                releaseInvisibleTiles();
+            }
+            return;
+        }
+        final int level = mPyramid.getLevelForScale(scale);
+        if (mBaseLayer == null) {
+            // The first viewport is the image fitted to the view, so this level has about as many
+            // pixels as the view
+            requestBaseLayer(level);
+        }
+        mScheduler.setViewport(visibleRect.centerX(), visibleRect.centerY(), level,
+            mPyramid.getTileExtent(level));
+        final int firstColumn, lastColumn, firstRow, lastRow;
+        if (level >= mBaseLevel) {
+            // The base layer is sharp enough, no tiles needed
+            firstColumn = firstRow = 0;
+            lastColumn = lastRow = -1;
+        } else {
+            firstColumn = mPyramid.getColumn(level, visibleRect.left);
+            lastColumn = mPyramid.getColumn(level, visibleRect.right);
+            firstRow = mPyramid.getRow(level, visibleRect.top);
+            lastRow = mPyramid.getRow(level, visibleRect.bottom);
+        }
+        if (level == mLevel && firstColumn == mFirstColumn && lastColumn == mLastColumn
+            && firstRow == mFirstRow && lastRow == mLastRow) {
+            return;
+        }
+        mLevel = level;
+        mFirstColumn = firstColumn;
+        mLastColumn = lastColumn;
+        mFirstRow = firstRow;
+        mLastRow = lastRow;
+
+        mVisibleTiles.clear();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final long key = Tile.key(level, column, row);
+                Tile tile = mTiles.get(key);
+                if (tile == null) {
+                    tile = mPrefetchTiles.get(key);
+                    if (tile != null) {
+                        mPrefetchTiles.remove(key);
+                        // Still being prefetched, it is wanted for real now
+                        tile.mPrefetch = false;
+                    } else {
+                        tile = mCache.take(key);
+                    }
+                    if (tile == null) {
+                        tile = new Tile(mPyramid, level, column, row);
+                        mScheduler.schedule(tile);
+                    }
+                    mTiles.put(key, tile);
+                }
+                mVisibleTiles.add(tile);
+            }
+        }
+        releaseInvisibleTiles();
+        mScheduler.purgeCancelled();
+    }
+
+    private void requestBaseLayer(int level) {
+        mBaseLayer = new Tile(mPyramid, level);
+        mBaseLevel = level;
+        mScheduler.schedule(mBaseLayer);
+    }
+
+    /**
+     * Cancels every queued decode outside the current viewport, for when a new gesture takes over
+     * and wherever the last one was heading no longer matters. Tiles a double tap would zoom in
+     * on are kept, as the second tap starts a new gesture too; they time out on their own.
+     * Decodes that already started run to completion.
+     */
+    void cancelPendingDecodes() {
+        if (mPrefetchTiles.isEmpty()) {
+            return;
+        }
+        // Backwards, as removing compacts the array behind the index
+        for (int i = mPrefetchTiles.size() - 1; i >= 0; i--) {
+            final Tile tile = mPrefetchTiles.valueAt(i);
+            if (tile.mPrefetchGroup != PREFETCH_ZOOM && !isVisible(tile)) {
+                tile.mCancelled = true;
+                mPrefetchTiles.removeAt(i);
+            }
+        }
+        // Visible tiles that leave the viewport are cancelled as it moves, so only these are left
+        mScheduler.purgeCancelled();
+    }
+
+    /**
+     * Queues low priority decodes for tiles that will be visible soon. They are kept in the cache
+     * once decoded, ready for when they come into view.
+     *
+     * @param visibleRect part of the image that is expected to be visible, in full resolution
+     *                    image pixels
+     * @param scale       view pixels per full resolution image pixel
+     * @param group       {@link #PREFETCH_FLING} or {@link #PREFETCH_ZOOM}
+     */
+    void prefetch(RectF visibleRect, float scale, int group) {
+        if (mRecycled
+            || !visibleRect.intersect(0f, 0f, mPyramid.getWidth(), mPyramid.getHeight())) {
+            return;
+        }
+        final int level = mPyramid.getLevelForScale(scale);
+        if (level >= mBaseLevel) {
+            return;
+        }
+        final int firstColumn = mPyramid.getColumn(level, visibleRect.left);
+        final int lastColumn = mPyramid.getColumn(level, visibleRect.right);
+        final int firstRow = mPyramid.getRow(level, visibleRect.top);
+        final int lastRow = mPyramid.getRow(level, visibleRect.bottom);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final long key = Tile.key(level, column, row);
+                if (mTiles.containsKey(key) || mPrefetchTiles.containsKey(key)
+                    || mCache.contains(key)) {
+                    continue;
+                }
+                final Tile tile = new Tile(mPyramid, level, column, row);
+                tile.mPrefetch = true;
+                tile.mPrefetchGroup = group;
+                mPrefetchTiles.put(key, tile);
+                mScheduler.schedule(tile);
+            }
+        }
+    }
+
+    /**
+     * Drops every prefetch of a group that has not been decoded yet
+     *
+     * @param group {@link #PREFETCH_FLING} or {@link #PREFETCH_ZOOM}
+     */
+    void cancelPrefetch(int group) {
+        if (mPrefetchTiles.isEmpty()) {
+            return;
+        }
+        for (int i = mPrefetchTiles.size() - 1; i >= 0; i--) {
+            final Tile tile = mPrefetchTiles.valueAt(i);
+            if (tile.mPrefetchGroup == group) {
+                tile.mCancelled = true;
+                mPrefetchTiles.removeAt(i);
+            }
+        }
+        mScheduler.purgeCancelled();
+    }
+
+    /**
+     * Frees every tile but the base layer, for while the view is not attached to a window. The
+     * drawable keeps working; {@link #reloadTiles()} brings back the tiles of the last viewport.
+     */
+    void releaseTiles() {
+        if (mRecycled) {
+            return;
+        }
+        mLevel = -1;
+        mVisibleTiles.clear();
+        releaseInvisibleTiles();
+        cancelPrefetch(PREFETCH_FLING);
+        cancelPrefetch(PREFETCH_ZOOM);
+        mScheduler.purgeCancelled();
+        mCache.trimToSize(0);
+        mBitmapPool.clear();
+    }
+
+    /**
+     * Decodes the tiles of the last viewport again after {@link #releaseTiles()}
+     */
+    void reloadTiles() {
+        if (mRecycled || mLevel != -1 || mViewportScale <= 0f) {
+            return;
+        }
+        mTempRect.set(mViewportRect);
+        setViewport(mTempRect, mViewportScale);
+        invalidateSelf();
+    }
+
+    /**
+     * Stops decoding and frees every tile and the decoder. The drawable draws nothing afterwards.
+     */
+    public void recycle() {
+        if (mRecycled) {
+            return;
+        }
+        mRecycled = true;
+        mLevel = -1;
+        mVisibleTiles.clear();
+        releaseInvisibleTiles();
+        cancelPrefetch(PREFETCH_FLING);
+        cancelPrefetch(PREFETCH_ZOOM);
+        if (mBaseLayer != null) {
+            mBaseLayer.mCancelled = true;
+            if (mBaseLayer.mBitmap != null) {
+                mBaseLayer.mBitmap.recycle();
+                mBaseLayer.mBitmap = null;
+            }
+        }
+        mCache.trimToSize(0);
+        mBitmapPool.clear();
+        // The decoder is recycled once the running decodes are done
+        mScheduler.shutdown();
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mBaseLayer != null && mBaseLayer.isLoaded()) {
+            canvas.drawBitmap(mBaseLayer.mBitmap, null, mBaseLayer.mRect, mPaint);
+        }
+        for (int i = 0, size = mVisibleTiles.size(); i < size; i++) {
+            final Tile tile = mVisibleTiles.get(i);
+            if (tile.isLoaded()) {
+                canvas.drawBitmap(tile.mBitmap, null, tile.mRect, mPaint);
+            }
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        // Tiles that are not decoded yet leave holes
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private boolean isVisible(Tile tile) {
+        return tile.mLevel == mLevel
+            && tile.mColumn >= mFirstColumn && tile.mColumn <= mLastColumn
+            && tile.mRow >= mFirstRow && tile.mRow <= mLastRow;
+    }
+
+    private void releaseInvisibleTiles() {
+        for (int i = mTiles.size() - 1; i >= 0; i--) {
+            final Tile tile = mTiles.valueAt(i);
+            if (!isVisible(tile)) {
+                mTiles.removeAt(i);
+                if (tile.isLoaded() && !mRecycled) {
+                    mCache.put(tile);
+                } else {
+                    tile.mCancelled = true;
+                    mBitmapPool.put(tile.mBitmap);
+                    tile.mBitmap = null;
+                }
+            }
+        }
+    }
+
+    private final TileDecodeScheduler.Worker mWorker = new TileDecodeScheduler.Worker() {
+        @Override
+        public void decodeTile(Tile tile) {
+            Bitmap bitmap = null;
+            try {
+                bitmap = TiledImageDrawable.this.decodeTile(tile);
+            } catch (IOException e) {
+                // Leave the tile blank
+            }
+            onTileDecoded(tile, bitmap);
+        }
+    };
+
+    /**
+     * Reads a tile from the disk cache, or decodes it and adds it there. Runs on the decode thread.
+     */
+    private Bitmap decodeTile(Tile tile) throws IOException {
+        if (mDiskCache == null) {
+            return decodeTile(tile, null);
+        }
+        final String name = tile.mBaseLayer
+            ? mDiskCacheKey + "-base-" + tile.mLevel
+            : mDiskCacheKey + '-' + tile.mLevel + '-' + tile.mColumn + '-' + tile.mRow;
+        Bitmap inBitmap = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && !tile.mBaseLayer) {
+            final int sampleSize = TilePyramid.getSampleSize(tile.mLevel);
+            inBitmap = mBitmapPool.get(tile.mRect.width() / sampleSize,
+                tile.mRect.height() / sampleSize, Bitmap.Config.ARGB_8888);
+        }
+        Bitmap bitmap = mDiskCache.get(name, inBitmap);
+        if (bitmap != null) {
+            if (bitmap != inBitmap) {
+                mBitmapPool.put(inBitmap);
+            }
+            return bitmap;
+        }
+        bitmap = decodeTile(tile, inBitmap);
+        if (bitmap != null && !tile.mCancelled) {
+            mDiskCache.put(name, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes a tile into {@code inBitmap}, or into a pooled bitmap of the right size if that is
+     * null and one is available. A bitmap given or taken here that the decode does not end up in
+     * goes back to the pool, even if decoding throws.
+     */
+    private Bitmap decodeTile(Tile tile, Bitmap inBitmap) throws IOException {
+        final int sampleSize = TilePyramid.getSampleSize(tile.mLevel);
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // Mutable, so the bitmap can go back to the pool later
+        options.inMutable = true;
+        if (inBitmap != null) {
+            options.inBitmap = inBitmap;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            options.inBitmap = mBitmapPool.get(tile.mRect.width() / sampleSize,
+                tile.mRect.height() / sampleSize, Bitmap.Config.ARGB_8888);
+        }
+        if (options.inBitmap == null) {
+            return mDecoder.decodeTile(tile, options);
+        }
+        Bitmap bitmap = null;
+        try {
+            try {
+                bitmap = mDecoder.decodeTile(tile, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap was not usable after all, decode into a new one
+                options.inBitmap.recycle();
+                options.inBitmap = null;
+                bitmap = mDecoder.decodeTile(tile, options);
+            }
+            return bitmap;
+        } finally {
+            // Not used, as the decode failed; it can still take another tile
+            if (options.inBitmap != null && bitmap != options.inBitmap) {
+                mBitmapPool.put(options.inBitmap);
+            }
+        }
+    }
+
+    private void onTileDecoded(final Tile tile, final Bitmap bitmap) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (tile.mCancelled) {
+                    mBitmapPool.put(bitmap);
+                    return;
+                }
+                if (tile.mBaseLayer) {
+                    onBaseLayerDecoded(bitmap);
+                    return;
+                }
+                tile.mBitmap = bitmap;
+                if (tile.mPrefetch) {
+                    mPrefetchTiles.remove(tile.mKey);
+                    if (bitmap != null) {
+                        mCache.put(tile);
+                    }
+                    return;
+                }
+                invalidateSelf();
+            }
+        });
+    }
+
+    private void onBaseLayerDecoded(Bitmap bitmap) {
+        mBaseLayer.mBitmap = bitmap;
+        if (bitmap == null) {
+            // Fall back to tiles at every level
+            mBaseLevel = Integer.MAX_VALUE;
+            mLevel = -1;
+            mTempRect.set(mViewportRect);
+            setViewport(mTempRect, mViewportScale);
+        }
+        invalidateSelf();
+    }
+}
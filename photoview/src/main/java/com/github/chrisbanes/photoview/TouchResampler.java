@@ -0,0 +1,101 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p/>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p/>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p/>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+/**
+ * Estimates where a pointer is at a given time from its latest samples, so a drag can be drawn
+ * where the finger will be when the frame shows rather than where it was at the last touch event.
+ * <p>
+ * Extrapolates in a straight line from the last two samples, by no more than half their interval
+ * and never more than {@value #MAX_PREDICTION_MILLIS} ms. Nothing is predicted across a change of
+ * direction, from samples too close together or too far apart to trust, or once the pointer has
+ * not reported for a while; the newest sample is used as it is then.
+ */
+final class TouchResampler {
+
+    static final long MAX_PREDICTION_MILLIS = 8L;
+    // Samples closer together than this give a noisy direction
+    private static final long MIN_INTERVAL_MILLIS = 2L;
+    // Samples further apart than this, or this old, say little about the movement now
+    private static final long MAX_INTERVAL_MILLIS = 20L;
+
+    private long mPreviousTime, mLatestTime;
+    private float mPreviousX, mPreviousY, mLatestX, mLatestY;
+    private int mCount;
+    private float mX, mY;
+
+    void reset() {
+        mCount = 0;
+    }
+
+    void addSample(long timeMillis, float x, float y) {
+        if (mCount > 0 && timeMillis <= mLatestTime) {
+            // Same time as the latest sample, take the newer position
+            mLatestX = x;
+            mLatestY = y;
+            return;
+        }
+        if (mCount > 0) {
+            final boolean turned = mCount > 1
+                && (x - mLatestX) * (mLatestX - mPreviousX)
+                + (y - mLatestY) * (mLatestY - mPreviousY) < 0f;
+            mPreviousTime = mLatestTime;
+            mPreviousX = mLatestX;
+            mPreviousY = mLatestY;
+            // After a turn, the sample before it says nothing about where the pointer goes next
+            mCount = turned ? 1 : 2;
+        }
+        if (mCount == 0) {
+            mCount = 1;
+        }
+        mLatestTime = timeMillis;
+        mLatestX = x;
+        mLatestY = y;
+    }
+
+    /**
+     * Works out the position at {@code timeMillis}, read it with {@link #getX()} and
+     * {@link #getY()}
+     *
+     * @return whether the position is a prediction, rather than the newest sample
+     */
+    boolean resample(long timeMillis) {
+        mX = mLatestX;
+        mY = mLatestY;
+        if (mCount < 2 || mPreviousTime >= mLatestTime) {
+            return false;
+        }
+        final long interval = mLatestTime - mPreviousTime;
+        final long ahead = timeMillis - mLatestTime;
+        if (interval < MIN_INTERVAL_MILLIS || interval > MAX_INTERVAL_MILLIS || ahead <= 0
+            || ahead > MAX_INTERVAL_MILLIS) {
+            return false;
+        }
+        final float alpha = (float) Math.min(ahead, Math.min(interval / 2, MAX_PREDICTION_MILLIS))
+            / interval;
+        mX = mLatestX + (mLatestX - mPreviousX) * alpha;
+        mY = mLatestY + (mLatestY - mPreviousY) * alpha;
+        return true;
+    }
+
+    float getX() {
+        return mX;
+    }
+
+    float getY() {
+        return mY;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+/**
+ * Interpolates between a captured start state and an end state worked out up front: the start
+ * scaled and rotated about a focal point, then moved by a bounds correction. Every fraction is
+ * computed from the start in decomposed space, so a frame never builds on the rounding of the
+ * frames before it, and the end state is handed out exactly as it was worked out.
+ */
+final class TransformInterpolation {
+
+    private final TransformState mStart = new TransformState();
+    private final TransformState mEnd = new TransformState();
+    private float mScaleFactor;
+    private float mDegrees;
+    private float mFocalX, mFocalY;
+    private float mCorrectionX, mCorrectionY;
+
+    /**
+     * Captures the start and works out the end state, without a bounds correction yet.
+     *
+     * @param scaleFactor scale of the end state, relative to the start
+     * @param degrees     rotation of the end state, relative to the start
+     */
+    void start(TransformState start, float scaleFactor, float degrees, float focalX,
+        float focalY) {
+        mStart.set(start);
+        mScaleFactor = scaleFactor;
+        mDegrees = degrees;
+        mFocalX = focalX;
+        mFocalY = focalY;
+        mCorrectionX = 0f;
+        mCorrectionY = 0f;
+        mEnd.set(start);
+        mEnd.postScale(scaleFactor, focalX, focalY);
+        mEnd.postRotate(degrees, focalX, focalY);
+    }
+
+    /**
+     * Moves the end state by a translation, such as the one that brings it within bounds. The
+     * translation is spread over the whole animation.
+     */
+    void setCorrection(float dx, float dy) {
+        mEnd.postTranslate(dx - mCorrectionX, dy - mCorrectionY);
+        mCorrectionX = dx;
+        mCorrectionY = dy;
+    }
+
+    TransformState getEnd() {
+        return mEnd;
+    }
+
+    float getFocalX() {
+        return mFocalX;
+    }
+
+    float getFocalY() {
+        return mFocalY;
+    }
+
+    /**
+     * @return the scale at {@code fraction} of the way, relative to the start
+     */
+    float getScale(float fraction) {
+        return fraction >= 1f ? mScaleFactor : 1f + fraction * (mScaleFactor - 1f);
+    }
+
+    /**
+     * Writes the state at {@code fraction} of the way into {@code out}, which is the end state
+     * itself from 1 on.
+     */
+    void getState(float fraction, TransformState out) {
+        if (fraction >= 1f) {
+            out.set(mEnd);
+            return;
+        }
+        final float scale = getScale(fraction);
+        out.set(mStart);
+        out.postScale(scale, mFocalX, mFocalY);
+        out.postRotate(fraction * mDegrees, mFocalX, mFocalY);
+        out.postTranslate(fraction * mCorrectionX, fraction * mCorrectionY);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+/**
+ * A similarity transform (uniform scale, then rotation, then translation) stored as four separate
+ * primitives. Unlike a matrix that is post-multiplied over and over, it cannot pick up skew or a
+ * scale that disagrees with the rotation, however many operations are applied to it. The matrix
+ * is only built on demand, through {@link #toMatrix(AffineMatrix)}.
+ */
+final class TransformState {
+
+    private float mScale;
+    private float mRotation;
+    private float mTransX;
+    private float mTransY;
+
+    TransformState() {
+        reset();
+    }
+
+    float getScale() {
+        return mScale;
+    }
+
+    /**
+     * @return the rotation in degrees, in the range (-180, 180]
+     */
+    float getRotation() {
+        return mRotation;
+    }
+
+    float getTransX() {
+        return mTransX;
+    }
+
+    float getTransY() {
+        return mTransY;
+    }
+
+    void reset() {
+        mScale = 1f;
+        mRotation = 0f;
+        mTransX = 0f;
+        mTransY = 0f;
+    }
+
+    void set(TransformState state) {
+        mScale = state.mScale;
+        mRotation = state.mRotation;
+        mTransX = state.mTransX;
+        mTransY = state.mTransY;
+    }
+
+    /**
+     * Decomposes the given matrix. Any skew or non-uniform scale it has is dropped.
+     */
+    void set(AffineMatrix matrix) {
+        mScale = matrix.getScale();
+        mRotation = matrix.getRotation();
+        mTransX = matrix.getTransX();
+        mTransY = matrix.getTransY();
+    }
+
+    void setScale(float scale, float px, float py) {
+        mScale = scale;
+        mRotation = 0f;
+        mTransX = px - scale * px;
+        mTransY = py - scale * py;
+    }
+
+    void setRotate(float degrees) {
+        mScale = 1f;
+        mRotation = AffineMatrix.normalizeDegrees(degrees);
+        mTransX = 0f;
+        mTransY = 0f;
+    }
+
+    void postTranslate(float dx, float dy) {
+        mTransX += dx;
+        mTransY += dy;
+    }
+
+    void postScale(float scale, float px, float py) {
+        mScale *= scale;
+        mTransX = px + (mTransX - px) * scale;
+        mTransY = py + (mTransY - py) * scale;
+    }
+
+    void postRotate(float degrees, float px, float py) {
+        final double radians = Math.toRadians(degrees);
+        final float sin = AffineMatrix.snapToZero((float) Math.sin(radians));
+        final float cos = AffineMatrix.snapToZero((float) Math.cos(radians));
+        final float dx = mTransX - px;
+        final float dy = mTransY - py;
+        mTransX = px + cos * dx - sin * dy;
+        mTransY = py + sin * dx + cos * dy;
+        mRotation = AffineMatrix.normalizeDegrees(mRotation + degrees);
+    }
+
+    /**
+     * Builds the matrix for this state into {@code matrix}.
+     */
+    void toMatrix(AffineMatrix matrix) {
+        matrix.setSimilarity(mScale, mRotation, mTransX, mTransY);
+    }
+}
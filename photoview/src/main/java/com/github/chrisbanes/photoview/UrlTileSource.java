@@ -0,0 +1,289 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * {@link TileSource} that downloads every tile from its own URL, such as the tiles of a DeepZoom
+ * or IIIF server. Subclasses only map a tile position to a URL.
+ * <p>
+ * Requests for a tile that is already being downloaded wait for that download instead of starting
+ * another one. A download is abandoned, and its connection closed, once every request waiting for
+ * it has been cancelled, which happens when the tile leaves the viewport. The number of downloads
+ * at a time is bounded by {@link #getParallelism()}.
+ */
+public abstract class UrlTileSource implements TileSource {
+
+    private static final int DEFAULT_MAX_REQUESTS = 4;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final int BUFFER_BYTES = 16 * 1024;
+    // How often a request waiting for another one's download checks whether it was cancelled
+    private static final long CANCEL_POLL_MILLIS = 50L;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTileSize;
+    private int mMaxRequests = DEFAULT_MAX_REQUESTS;
+    // Downloads that are running, by URL
+    private final HashMap<String, Download> mDownloads = new HashMap<>();
+
+    /**
+     * @param width    width of the full resolution image
+     * @param height   height of the full resolution image
+     * @param tileSize size of the tiles the server hands out
+     */
+    protected UrlTileSource(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Image and tile sizes must be positive");
+        }
+        mWidth = width;
+        mHeight = height;
+        mTileSize = tileSize;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * Sets how many tiles may be downloaded at the same time. Takes effect for drawables created
+     * afterwards. The default is 4.
+     */
+    public void setMaxConcurrentRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed");
+        }
+        mMaxRequests = maxRequests;
+    }
+
+    @Override
+    public int getParallelism() {
+        return mMaxRequests;
+    }
+
+    /**
+     * @return the URL of a tile
+     */
+    @NonNull
+    protected abstract String getTileUrl(int level, int column, int row);
+
+    /**
+     * Servers that pad their tiles with pixels of the neighboring tiles return the part that is
+     * the tile itself here.
+     *
+     * @return the part of the downloaded image that is the tile, or null if it is all of it
+     */
+    @Nullable
+    protected Rect getTileCrop(int level, int column, int row) {
+        return null;
+    }
+
+    /**
+     * Opens the connection for a tile. Override to add headers, such as for authentication.
+     */
+    @NonNull
+    protected HttpURLConnection openConnection(@NonNull URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        return connection;
+    }
+
+    /**
+     * @return the full resolution image region covered by a tile
+     */
+    @NonNull
+    protected final Rect getTileRect(int level, int column, int row) {
+        final int extent = mTileSize << level;
+        final int left = column * extent;
+        final int top = row * extent;
+        return new Rect(left, top, Math.min(left + extent, mWidth),
+            Math.min(top + extent, mHeight));
+    }
+
+    @Override
+    public Bitmap loadTile(@NonNull Request request, @NonNull BitmapFactory.Options options)
+        throws IOException {
+        final int level = request.getLevel();
+        final int column = request.getColumn();
+        final int row = request.getRow();
+        final byte[] bytes = fetch(getTileUrl(level, column, row), request);
+        if (bytes == null) {
+            return null;
+        }
+        final Rect crop = getTileCrop(level, column, row);
+        if (crop == null) {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+        final BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(bytes, 0,
+            bytes.length, false);
+        try {
+            return decoder.decodeRegion(crop, options);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * @return the body at {@code url}, or null if the request was cancelled first
+     */
+    byte[] fetch(String url, Request request) throws IOException {
+        final Download download;
+        final boolean downloading;
+        synchronized (mDownloads) {
+            final Download running = mDownloads.get(url);
+            downloading = running == null;
+            download = downloading ? new Download() : running;
+            download.mRequests.add(request);
+            if (downloading) {
+                mDownloads.put(url, download);
+            }
+        }
+
+        if (downloading) {
+            byte[] bytes = null;
+            IOException error = null;
+            try {
+                bytes = download(url, download);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (mDownloads) {
+                if (mDownloads.get(url) == download) {
+                    mDownloads.remove(url);
+                }
+                download.mBytes = bytes;
+                download.mError = error;
+                download.mDone = true;
+                mDownloads.notifyAll();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return bytes;
+        }
+
+        synchronized (mDownloads) {
+            // Cancelling a request does not notify, so check every now and then
+            while (!download.mDone && !request.isCancelled()) {
+                try {
+                    mDownloads.wait(CANCEL_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if (!download.mDone) {
+                return null;
+            }
+        }
+        if (download.mError != null) {
+            throw new IOException("Downloading " + url + " failed", download.mError);
+        }
+        return download.mBytes;
+    }
+
+    private byte[] download(String url, Download download) throws IOException {
+        if (isAbandoned(url, download)) {
+            return null;
+        }
+        final HttpURLConnection connection = openConnection(new URL(url));
+        boolean complete = false;
+        try {
+            final int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code + " for " + url);
+            }
+            final InputStream in = connection.getInputStream();
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    Math.max(connection.getContentLength(), BUFFER_BYTES));
+                final byte[] buffer = new byte[BUFFER_BYTES];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    if (isAbandoned(url, download)) {
+                        return null;
+                    }
+                    out.write(buffer, 0, count);
+                }
+                complete = true;
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } finally {
+            if (!complete) {
+                // Closing the stream alone would keep the connection for reuse, half read
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return whether every request for a download was cancelled, in which case it no longer
+     * takes new requests
+     */
+    private boolean isAbandoned(String url, Download download) {
+        synchronized (mDownloads) {
+            for (int i = 0, size = download.mRequests.size(); i < size; i++) {
+                if (!download.mRequests.get(i).isCancelled()) {
+                    return false;
+                }
+            }
+            if (mDownloads.get(url) == download) {
+                mDownloads.remove(url);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A tile being downloaded, shared by every request for it. Guarded by mDownloads.
+     */
+    private static final class Download {
+        final ArrayList<Request> mRequests = new ArrayList<>();
+        byte[] mBytes;
+        IOException mError;
+        boolean mDone;
+    }
+}
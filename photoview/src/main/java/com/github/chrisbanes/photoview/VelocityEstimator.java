@@ -0,0 +1,156 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p/>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p/>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p/>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+/**
+ * Estimates the velocity of a pointer from its recent samples, like
+ * {@link android.view.VelocityTracker} does, but without native state: the samples live in a
+ * preallocated ring buffer and one instance serves every gesture. Fits a quadratic by least
+ * squares to the samples of the last {@value #HORIZON_MILLIS} ms and takes its slope at the newest
+ * sample, falling back to a straight line when there are too few samples for a curve.
+ */
+final class VelocityEstimator {
+
+    // Sized from the horizon: holds all of it at up to 630 samples a second, well above the
+    // 240 Hz of the fastest digitizers
+    static final int HISTORY_SIZE = 64;
+    // Only samples this recent count
+    static final long HORIZON_MILLIS = 100L;
+    // A pause this long between samples means the pointer stopped
+    private static final long ASSUME_STOPPED_MILLIS = 40L;
+
+    private final long[] mTimes = new long[HISTORY_SIZE];
+    private final float[] mXs = new float[HISTORY_SIZE];
+    private final float[] mYs = new float[HISTORY_SIZE];
+    // Where the next sample goes
+    private int mNext;
+    private int mCount;
+    private float mVelocityX;
+    private float mVelocityY;
+
+    /**
+     * Forgets every sample, ready for the next gesture
+     */
+    void clear() {
+        mCount = 0;
+        mNext = 0;
+        mVelocityX = 0f;
+        mVelocityY = 0f;
+    }
+
+    /**
+     * @param timeMillis time of the sample, such as {@link android.view.MotionEvent#getEventTime()}
+     */
+    void addSample(long timeMillis, float x, float y) {
+        if (mCount > 0 && timeMillis - mTimes[getIndex(0)] > ASSUME_STOPPED_MILLIS) {
+            // Whatever happened before the pause says nothing about the movement now
+            clear();
+        }
+        mTimes[mNext] = timeMillis;
+        mXs[mNext] = x;
+        mYs[mNext] = y;
+        mNext = (mNext + 1) % HISTORY_SIZE;
+        mCount = Math.min(mCount + 1, HISTORY_SIZE);
+    }
+
+    /**
+     * Works out the velocity as of {@code timeMillis}, which is zero if the pointer has not moved
+     * for a while by then. Read it with {@link #getVelocityX()} and {@link #getVelocityY()}.
+     *
+     * @param timeMillis time the velocity is wanted for, such as that of the up event
+     */
+    void computeVelocity(long timeMillis) {
+        mVelocityX = 0f;
+        mVelocityY = 0f;
+        if (mCount < 2 || timeMillis - mTimes[getIndex(0)] > ASSUME_STOPPED_MILLIS) {
+            return;
+        }
+        // Sums of powers of t, with t relative to the newest sample so the slope at t = 0 is the
+        // velocity
+        final long newest = mTimes[getIndex(0)];
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double x0 = 0, x1 = 0, x2 = 0, y0 = 0, y1 = 0, y2 = 0;
+        int samples = 0;
+        for (int age = 0; age < mCount; age++) {
+            final int index = getIndex(age);
+            final double t = mTimes[index] - newest;
+            if (-t > HORIZON_MILLIS) {
+                break;
+            }
+            final double t2 = t * t;
+            s0 += 1;
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+            x0 += mXs[index];
+            x1 += t * mXs[index];
+            x2 += t2 * mXs[index];
+            y0 += mYs[index];
+            y1 += t * mYs[index];
+            y2 += t2 * mYs[index];
+            samples++;
+        }
+        if (samples < 2) {
+            return;
+        }
+        // Cramer's rule on the normal equations of x = a + b t + c t^2; b is the slope
+        final double determinant = samples < 3 ? 0
+            : determinant(s0, s1, s2, s1, s2, s3, s2, s3, s4);
+        if (Math.abs(determinant) > 1e-6) {
+            mVelocityX = (float) (1000 * determinant(s0, x0, s2, s1, x1, s3, s2, x2, s4)
+                / determinant);
+            mVelocityY = (float) (1000 * determinant(s0, y0, s2, s1, y1, s3, s2, y2, s4)
+                / determinant);
+            return;
+        }
+        // Too few distinct times for a curve, fit a line
+        final double lineDeterminant = s0 * s2 - s1 * s1;
+        if (Math.abs(lineDeterminant) > 1e-6) {
+            mVelocityX = (float) (1000 * (s0 * x1 - s1 * x0) / lineDeterminant);
+            mVelocityY = (float) (1000 * (s0 * y1 - s1 * y0) / lineDeterminant);
+        }
+    }
+
+    /**
+     * @return velocity along x in pixels per second, as of the last {@link #computeVelocity}
+     */
+    float getVelocityX() {
+        return mVelocityX;
+    }
+
+    /**
+     * @return velocity along y in pixels per second, as of the last {@link #computeVelocity}
+     */
+    float getVelocityY() {
+        return mVelocityY;
+    }
+
+    /**
+     * @return buffer index of the sample {@code age} samples older than the newest one
+     */
+    private int getIndex(int age) {
+        return (mNext - 1 - age + 2 * HISTORY_SIZE) % HISTORY_SIZE;
+    }
+
+    /**
+     * @return determinant of the 3x3 matrix given row by row
+     */
+    private static double determinant(double a, double b, double c, double d, double e, double f,
+                                      double g, double h, double i) {
+        return a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AffineMatrixTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void postOperations_mapPointsLikeTheirComposition() {
+        final AffineMatrix matrix = new AffineMatrix();
+        matrix.postScale(2f, 3f, 10f, 20f);
+        matrix.postRotate(30f, 5f, -5f);
+        matrix.postTranslate(7f, 11f);
+
+        final float[] point = {4f, -6f};
+        matrix.mapPoints(point);
+
+        // The same three steps, one at a time
+        float x = 10f + (4f - 10f) * 2f;
+        float y = 20f + (-6f - 20f) * 3f;
+        final double radians = Math.toRadians(30f);
+        final float rotatedX = (float) (5f + (x - 5f) * Math.cos(radians)
+            - (y + 5f) * Math.sin(radians));
+        final float rotatedY = (float) (-5f + (x - 5f) * Math.sin(radians)
+            + (y + 5f) * Math.cos(radians));
+        x = rotatedX + 7f;
+        y = rotatedY + 11f;
+        assertEquals(x, point[0], EPSILON);
+        assertEquals(y, point[1], EPSILON);
+    }
+
+    @Test
+    public void setConcat_acceptsItselfAsEitherArgument() {
+        final AffineMatrix a = new AffineMatrix();
+        a.setSimilarity(2f, 45f, 3f, 4f);
+        final AffineMatrix b = new AffineMatrix();
+        b.setScale(1.5f, 0.5f, 8f, 8f);
+
+        final AffineMatrix expected = new AffineMatrix();
+        expected.setConcat(a, b);
+        final AffineMatrix actual = new AffineMatrix();
+        actual.set(a);
+        actual.preConcat(b);
+        assertTrue(actual.nearlyEquals(expected, EPSILON));
+
+        expected.setConcat(b, a);
+        actual.set(a);
+        actual.postConcat(b);
+        assertTrue(actual.nearlyEquals(expected, EPSILON));
+    }
+
+    @Test
+    public void invert_undoesTheTransform() {
+        final AffineMatrix matrix = new AffineMatrix();
+        matrix.setSimilarity(3f, -70f, 12f, -9f);
+        matrix.postScale(1f, 2f);
+        final AffineMatrix inverse = new AffineMatrix();
+        assertTrue(matrix.invert(inverse));
+
+        final AffineMatrix product = new AffineMatrix();
+        product.setConcat(matrix, inverse);
+        assertTrue(product.toString(), product.nearlyEquals(new AffineMatrix(), EPSILON));
+    }
+
+    @Test
+    public void invert_leavesTargetAloneWhenSingular() {
+        final AffineMatrix singular = new AffineMatrix();
+        singular.setScale(0f, 1f);
+        final AffineMatrix target = new AffineMatrix();
+        target.setTranslate(1f, 2f);
+        assertFalse(singular.invert(target));
+        assertEquals(1f, target.getTransX(), 0f);
+        assertEquals(2f, target.getTransY(), 0f);
+    }
+
+    @Test
+    public void quarterTurns_stayExact() {
+        final AffineMatrix matrix = new AffineMatrix();
+        matrix.postRotate(90f);
+        assertEquals(0f, matrix.getScaleX(), 0f);
+        assertEquals(-1f, matrix.getSkewX(), 0f);
+        assertEquals(1f, matrix.getSkewY(), 0f);
+        matrix.postRotate(90f);
+        matrix.postRotate(180f);
+        assertTrue(matrix.isIdentity());
+    }
+
+    @Test
+    public void generation_onlyMovesOnChange() {
+        final AffineMatrix matrix = new AffineMatrix();
+        final int generation = matrix.getGeneration();
+        matrix.postTranslate(0f, 0f);
+        matrix.postScale(1f, 1f, 5f, 5f);
+        matrix.reset();
+        assertEquals(generation, matrix.getGeneration());
+        matrix.postTranslate(1f, 0f);
+        assertNotEquals(generation, matrix.getGeneration());
+    }
+
+    @Test
+    public void decomposition_tracksSimilarityOperations() {
+        final AffineMatrix matrix = new AffineMatrix();
+        matrix.postScale(2f, 2f, 10f, 10f);
+        matrix.postRotate(170f);
+        matrix.postRotate(20f);
+        matrix.postScale(1.5f, 1.5f);
+        assertEquals(3f, matrix.getScale(), EPSILON);
+        assertEquals(-170f, matrix.getRotation(), EPSILON);
+    }
+
+    @Test
+    public void decomposition_isRecomputedAfterOtherOperations() {
+        final AffineMatrix matrix = new AffineMatrix();
+        matrix.setSimilarity(2f, 60f, 0f, 0f);
+        final AffineMatrix other = new AffineMatrix();
+        other.setRotate(-15f);
+        matrix.postConcat(other);
+        assertEquals(2f, matrix.getScale(), EPSILON);
+        assertEquals(45f, matrix.getRotation(), EPSILON);
+    }
+
+    @Test
+    public void setRectToRect_centersLikeMatrix() {
+        final AffineMatrix matrix = new AffineMatrix();
+        assertTrue(matrix.setRectToRect(200f, 100f, 400f, 400f,
+            AffineMatrix.SCALE_TO_FIT_CENTER));
+        assertEquals(2f, matrix.getScaleX(), 0f);
+        assertEquals(2f, matrix.getScaleY(), 0f);
+        assertEquals(0f, matrix.getTransX(), 0f);
+        assertEquals(100f, matrix.getTransY(), 0f);
+
+        assertTrue(matrix.setRectToRect(200f, 100f, 400f, 400f, AffineMatrix.SCALE_TO_FIT_END));
+        assertEquals(200f, matrix.getTransY(), 0f);
+
+        assertFalse(matrix.setRectToRect(0f, 100f, 400f, 400f, AffineMatrix.SCALE_TO_FIT_START));
+        assertTrue(matrix.isIdentity());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnimationDriverTest {
+
+    private static final long FRAME_NANOS = 16000000L;
+
+    private FakeFrameScheduler mScheduler;
+    private long mNow;
+    private int mHostFrames;
+    private AnimationDriver mDriver;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeFrameScheduler();
+        mNow = 0L;
+        mHostFrames = 0;
+        mDriver = new AnimationDriver(new AnimationDriver.Clock() {
+            @Override
+            public long nanoTime() {
+                return mNow;
+            }
+        }, mScheduler, new AnimationDriver.Host() {
+            @Override
+            public void onAnimationFrame(long frameTimeNanos) {
+                mHostFrames++;
+            }
+        });
+    }
+
+    @Test
+    public void start_postsOneFrameCallback() {
+        mDriver.start(AnimationDriver.SLOT_ZOOM, new CountingAnimation(3));
+        mDriver.start(AnimationDriver.SLOT_FLING, new CountingAnimation(3));
+        assertEquals(1, mScheduler.mCallbacks.size());
+    }
+
+    @Test
+    public void frame_ticksEverySlotThenHostOnce() {
+        final CountingAnimation zoom = new CountingAnimation(2);
+        final CountingAnimation fling = new CountingAnimation(2);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, zoom);
+        mDriver.start(AnimationDriver.SLOT_FLING, fling);
+        runFrame();
+        assertEquals(1, zoom.mFrames);
+        assertEquals(1, fling.mFrames);
+        assertEquals(1, mHostFrames);
+    }
+
+    @Test
+    public void finishedAnimation_stopsRequestingFrames() {
+        final CountingAnimation animation = new CountingAnimation(2);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, animation);
+        runFrame();
+        assertTrue(mDriver.isRunning(AnimationDriver.SLOT_ZOOM));
+        runFrame();
+        assertFalse(mDriver.isRunning());
+        assertEquals(0, mScheduler.mCallbacks.size());
+        assertEquals(0, animation.mCancels);
+    }
+
+    @Test
+    public void startInSameSlot_cancelsPrevious() {
+        final CountingAnimation first = new CountingAnimation(5);
+        final CountingAnimation second = new CountingAnimation(5);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, first);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, second);
+        assertEquals(1, first.mCancels);
+        runFrame();
+        assertEquals(0, first.mFrames);
+        assertEquals(1, second.mFrames);
+    }
+
+    @Test
+    public void cancelAll_cancelsEveryRunningAnimation() {
+        final CountingAnimation zoom = new CountingAnimation(5);
+        final CountingAnimation fling = new CountingAnimation(5);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, zoom);
+        mDriver.start(AnimationDriver.SLOT_FLING, fling);
+        mDriver.cancelAll();
+        assertEquals(1, zoom.mCancels);
+        assertEquals(1, fling.mCancels);
+        assertFalse(mDriver.isRunning());
+    }
+
+    @Test
+    public void frame_passesTheVsyncTimeNotTheClock() {
+        final long[] seen = new long[1];
+        mDriver.start(AnimationDriver.SLOT_ROTATE, new CountingAnimation(1) {
+            @Override
+            public boolean onFrame(long frameTimeNanos) {
+                seen[0] = frameTimeNanos;
+                return super.onFrame(frameTimeNanos);
+            }
+        });
+        mNow = 5L;
+        mScheduler.fire(42L);
+        assertEquals(42L, seen[0]);
+        assertEquals(5L, mDriver.now());
+    }
+
+    @Test
+    public void cancelDuringFrame_skipsTheCancelledSlot() {
+        final CountingAnimation fling = new CountingAnimation(5);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, new CountingAnimation(5) {
+            @Override
+            public boolean onFrame(long frameTimeNanos) {
+                mDriver.cancel(AnimationDriver.SLOT_FLING);
+                return super.onFrame(frameTimeNanos);
+            }
+        });
+        mDriver.start(AnimationDriver.SLOT_FLING, fling);
+        runFrame();
+        assertEquals(0, fling.mFrames);
+        assertEquals(1, fling.mCancels);
+        assertFalse(mDriver.isRunning(AnimationDriver.SLOT_FLING));
+    }
+
+    @Test
+    public void replacementStartedOnLastFrame_keepsRunning() {
+        final CountingAnimation next = new CountingAnimation(2);
+        mDriver.start(AnimationDriver.SLOT_ZOOM, new CountingAnimation(1) {
+            @Override
+            public boolean onFrame(long frameTimeNanos) {
+                mDriver.start(AnimationDriver.SLOT_ZOOM, next);
+                return super.onFrame(frameTimeNanos);
+            }
+        });
+        runFrame();
+        assertTrue(mDriver.isRunning(AnimationDriver.SLOT_ZOOM));
+        runUntilIdle();
+        assertEquals(2, next.mFrames);
+        assertEquals(0, next.mCancels);
+    }
+
+    @Test
+    public void requestFrame_withoutAnimations_reachesHostOnce() {
+        mDriver.requestFrame();
+        mDriver.requestFrame();
+        assertEquals(1, mScheduler.mCallbacks.size());
+        runFrame();
+        assertEquals(1, mHostFrames);
+        assertEquals(0, mScheduler.mCallbacks.size());
+    }
+
+    @Test
+    public void cancel_emptySlot_doesNothing() {
+        mDriver.cancel(AnimationDriver.SLOT_DRAG);
+        assertFalse(mDriver.isRunning());
+    }
+
+    private void runFrame() {
+        mNow += FRAME_NANOS;
+        mScheduler.fire(mNow);
+    }
+
+    private void runUntilIdle() {
+        for (int i = 0; i < 1000 && !mScheduler.mCallbacks.isEmpty(); i++) {
+            runFrame();
+        }
+        assertFalse(mDriver.isRunning());
+    }
+
+    private static final class FakeFrameScheduler implements AnimationDriver.FrameScheduler {
+
+        final ArrayList<AnimationDriver.FrameCallback> mCallbacks = new ArrayList<>();
+
+        @Override
+        public void postFrameCallback(AnimationDriver.FrameCallback callback) {
+            mCallbacks.add(callback);
+        }
+
+        @Override
+        public void removeFrameCallback(AnimationDriver.FrameCallback callback) {
+            mCallbacks.remove(callback);
+        }
+
+        void fire(long frameTimeNanos) {
+            final ArrayList<AnimationDriver.FrameCallback> callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+            for (AnimationDriver.FrameCallback callback : callbacks) {
+                callback.doFrame(frameTimeNanos);
+            }
+        }
+    }
+
+    private static class CountingAnimation implements AnimationDriver.Animation {
+
+        final int mLength;
+        int mFrames;
+        int mCancels;
+
+        CountingAnimation(int length) {
+            mLength = length;
+        }
+
+        @Override
+        public boolean onFrame(long frameTimeNanos) {
+            mFrames++;
+            return mFrames < mLength;
+        }
+
+        @Override
+        public void onCancel() {
+            mCancels++;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the plain Java helpers a gesture frame is built from many times over and checks, through
+ * the JVM's per-thread allocation counter, that none of them allocates: resampling and tracking
+ * the pointer, ticking an interpolated zoom and a fling through the {@link AnimationDriver}, and
+ * building the draw matrix. The attacher itself is covered on a device by
+ * {@code PhotoViewAttacherAllocationTest}.
+ */
+public class GestureAllocationTest {
+
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 20000;
+    private static final long FRAME_NANOS = 16000000L;
+
+    private com.sun.management.ThreadMXBean mThreads;
+
+    private final AffineMatrix mBase = new AffineMatrix();
+    private final AffineMatrix mSupp = new AffineMatrix();
+    private final AffineMatrix mDraw = new AffineMatrix();
+    private final float[] mValues = new float[9];
+    private final VelocityEstimator mVelocity = new VelocityEstimator();
+    private final TouchResampler mResampler = new TouchResampler();
+    private final TransformInterpolation mInterpolation = new TransformInterpolation();
+    private final TransformState mStart = new TransformState();
+    private final TransformState mZoomState = new TransformState();
+    private final Zoom mZoom = new Zoom();
+    private final Fling mFling = new Fling();
+    private AnimationDriver mDriver;
+    private long mFrameTime;
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+
+        mBase.setRectToRect(4000f, 3000f, 1080f, 1920f, AffineMatrix.SCALE_TO_FIT_CENTER);
+        mDriver = new AnimationDriver(AnimationDriver.SYSTEM_CLOCK,
+            new AnimationDriver.FrameScheduler() {
+                @Override
+                public void postFrameCallback(AnimationDriver.FrameCallback callback) {
+                    // Frames are driven by hand
+                }
+
+                @Override
+                public void removeFrameCallback(AnimationDriver.FrameCallback callback) {
+                }
+            }, new AnimationDriver.Host() {
+                @Override
+                public void onAnimationFrame(long frameTimeNanos) {
+                    mDraw.setConcat(mSupp, mBase);
+                    mDraw.getValues(mValues);
+                }
+            });
+    }
+
+    @Test
+    public void gestureFrames_doNotAllocate() {
+        runFrames(WARM_UP_FRAMES);
+        // Whatever reading the counter costs is taken off below
+        final long start = allocatedBytes();
+        final long overhead = allocatedBytes() - start;
+        final long before = allocatedBytes();
+        runFrames(MEASURED_FRAMES);
+        final long allocated = allocatedBytes() - before - overhead;
+        assertEquals("Bytes allocated over " + MEASURED_FRAMES + " frames", 0L, allocated);
+    }
+
+    private long allocatedBytes() {
+        return mThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void runFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            final long timeMillis = mFrameTime / 1000000L;
+            // Two touch samples per frame, like a 120 Hz digitizer under a 60 Hz display
+            final float x = (i % 400) * 3f;
+            final float y = (i % 400) * 2f;
+            mResampler.addSample(timeMillis - 8L, x, y);
+            mResampler.addSample(timeMillis, x + 1.5f, y + 1f);
+            mResampler.resample(timeMillis + 8L);
+            mVelocity.addSample(timeMillis - 8L, x, y);
+            mVelocity.addSample(timeMillis, x + 1.5f, y + 1f);
+            mVelocity.computeVelocity(timeMillis);
+            mSupp.postTranslate(mResampler.getX() - x, mResampler.getY() - y);
+
+            if (i % 30 == 0) {
+                // Restart both animations every now and then, the way double taps and flings do
+                mSupp.reset();
+                mZoom.restart(i % 60 == 0 ? 3f : 1f / 3f);
+                mDriver.start(AnimationDriver.SLOT_ZOOM, mZoom);
+                mFling.restart(mVelocity.getVelocityX(), mVelocity.getVelocityY());
+                mDriver.start(AnimationDriver.SLOT_FLING, mFling);
+            }
+            mFrameTime += FRAME_NANOS;
+            mDriver.doFrame(mFrameTime);
+        }
+    }
+
+    /**
+     * Interpolates a zoom from its captured start, like the attacher's animated zoom
+     */
+    private final class Zoom implements AnimationDriver.Animation {
+
+        private int mFrame;
+
+        void restart(float scaleFactor) {
+            mFrame = 0;
+            mStart.set(mSupp);
+            mInterpolation.start(mStart, scaleFactor, 15f, 540f, 960f);
+            mInterpolation.setCorrection(10f, -10f);
+        }
+
+        @Override
+        public boolean onFrame(long frameTimeNanos) {
+            mFrame++;
+            mInterpolation.getState(Math.min(1f, mFrame / 20f), mZoomState);
+            mZoomState.toMatrix(mSupp);
+            return mFrame < 20;
+        }
+
+        @Override
+        public void onCancel() {
+        }
+    }
+
+    /**
+     * Decelerates a translation, like the attacher's fling
+     */
+    private final class Fling implements AnimationDriver.Animation {
+
+        private float mVelocityX, mVelocityY;
+
+        void restart(float velocityX, float velocityY) {
+            mVelocityX = velocityX;
+            mVelocityY = velocityY;
+        }
+
+        @Override
+        public boolean onFrame(long frameTimeNanos) {
+            mSupp.postTranslate(mVelocityX * 0.016f, mVelocityY * 0.016f);
+            mVelocityX *= 0.9f;
+            mVelocityY *= 0.9f;
+            return Math.abs(mVelocityX) + Math.abs(mVelocityY) > 1f;
+        }
+
+        @Override
+        public void onCancel() {
+        }
+    }
+}
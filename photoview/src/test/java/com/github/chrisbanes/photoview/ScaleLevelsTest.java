@@ -0,0 +1,62 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScaleLevelsTest {
+
+    @Test
+    public void getLevel_isHighestLevelNotAboveScale() {
+        final ScaleLevels levels = ScaleLevels.of(1f, 2f, 4f);
+        assertEquals(-1, levels.getLevel(0.5f));
+        assertEquals(0, levels.getLevel(1f));
+        assertEquals(0, levels.getLevel(1.9f));
+        assertEquals(1, levels.getLevel(2f));
+        assertEquals(2, levels.getLevel(4f));
+        assertEquals(2, levels.getLevel(9f));
+    }
+
+    @Test
+    public void of_copiesTheArray() {
+        final float[] array = {1f, 3f};
+        final ScaleLevels levels = ScaleLevels.of(array);
+        array[1] = 5f;
+        assertEquals(3f, levels.getMax(), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_rejectsSingleLevel() {
+        ScaleLevels.of(1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_rejectsOutOfRange() {
+        ScaleLevels.of(1f, ScaleConfig.SCALE_VALUE_MAX + 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_rejectsNaN() {
+        ScaleLevels.of(1f, Float.NaN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_rejectsEqualLevels() {
+        ScaleLevels.of(1f, 2f, 2f);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TouchResamplerTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    private TouchResampler mResampler;
+
+    @Before
+    public void setUp() {
+        mResampler = new TouchResampler();
+    }
+
+    @Test
+    public void singleSample_isNotPredicted() {
+        mResampler.addSample(100L, 10f, 20f);
+        assertFalse(mResampler.resample(108L));
+        assertEquals(10f, mResampler.getX(), 0f);
+        assertEquals(20f, mResampler.getY(), 0f);
+    }
+
+    @Test
+    public void steadyMovement_isExtrapolated() {
+        // 1 px per ms along x, samples 8 ms apart, so at most half an interval ahead
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(108L, 8f, 0f);
+        assertTrue(mResampler.resample(110L));
+        assertEquals(10f, mResampler.getX(), EPSILON);
+        assertTrue(mResampler.resample(120L));
+        assertEquals(12f, mResampler.getX(), EPSILON);
+    }
+
+    @Test
+    public void prediction_isCappedAtMaxPrediction() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(120L, 20f, 0f);
+        assertTrue(mResampler.resample(135L));
+        assertEquals(20f + TouchResampler.MAX_PREDICTION_MILLIS, mResampler.getX(), EPSILON);
+    }
+
+    @Test
+    public void frameAtOrBeforeLatestSample_isNotPredicted() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(108L, 8f, 0f);
+        assertFalse(mResampler.resample(108L));
+        assertEquals(8f, mResampler.getX(), 0f);
+        assertFalse(mResampler.resample(104L));
+        assertEquals(8f, mResampler.getX(), 0f);
+    }
+
+    @Test
+    public void samplesTooCloseTogether_areNotPredicted() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(101L, 5f, 0f);
+        assertFalse(mResampler.resample(105L));
+        assertEquals(5f, mResampler.getX(), 0f);
+    }
+
+    @Test
+    public void samplesTooFarApart_areNotPredicted() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(121L, 21f, 0f);
+        assertFalse(mResampler.resample(125L));
+        assertEquals(21f, mResampler.getX(), 0f);
+    }
+
+    @Test
+    public void frameTooFarAhead_isNotPredicted() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(108L, 8f, 0f);
+        // The pointer has not reported for longer than any useful interval, so it probably stopped
+        assertFalse(mResampler.resample(129L));
+        assertEquals(8f, mResampler.getX(), 0f);
+    }
+
+    @Test
+    public void turn_dropsTheSampleBeforeIt() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(108L, 8f, 0f);
+        // Back the other way: extrapolating from the previous sample would overshoot the turn
+        mResampler.addSample(116L, 4f, 0f);
+        assertFalse(mResampler.resample(120L));
+        assertEquals(4f, mResampler.getX(), 0f);
+        // Once moving steadily again, prediction resumes in the new direction
+        mResampler.addSample(124L, 0f, 0f);
+        assertTrue(mResampler.resample(128L));
+        assertEquals(-2f, mResampler.getX(), EPSILON);
+    }
+
+    @Test
+    public void sampleAtSameTime_replacesLatestPosition() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(108L, 8f, 0f);
+        mResampler.addSample(108L, 9f, 1f);
+        assertTrue(mResampler.resample(112L));
+        assertEquals(9f + 9f * 4 / 8, mResampler.getX(), EPSILON);
+        assertEquals(1f + 1f * 4 / 8, mResampler.getY(), EPSILON);
+    }
+
+    @Test
+    public void reset_forgetsEverySample() {
+        mResampler.addSample(100L, 0f, 0f);
+        mResampler.addSample(108L, 8f, 0f);
+        mResampler.reset();
+        mResampler.addSample(200L, 50f, 0f);
+        assertFalse(mResampler.resample(204L));
+        assertEquals(50f, mResampler.getX(), 0f);
+    }
+
+    /**
+     * Replays a recorded-style trace of a finger sampled at 120 Hz, delivered in 60 Hz batches
+     * and drawn at 60 Hz vsync, and compares how far behind the finger each frame is drawn with
+     * and without resampling.
+     */
+    @Test
+    public void trace_resamplingReducesLagWithoutOvershootingTurns() {
+        final long sampleMillis = 8L;
+        final float frameMillis = 1000f / 60f;
+        // Out and back along x, 2 px per ms, turning at 200 ms
+        final int sampleCount = 50;
+        final long[] times = new long[sampleCount];
+        final float[] xs = new float[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            times[i] = 1000L + i * sampleMillis;
+            xs[i] = fingerX(times[i]);
+        }
+
+        double plainLag = 0, resampledLag = 0, maxOvershoot = 0;
+        int frames = 0;
+        int next = 0;
+        for (float frame = times[1] + frameMillis; frame < times[sampleCount - 1];
+            frame += frameMillis) {
+            // Input for the frame is whatever arrived half a frame before it
+            final long frameTime = (long) frame;
+            final long inputDeadline = (long) (frame - frameMillis / 2);
+            while (next < sampleCount && times[next] <= inputDeadline) {
+                mResampler.addSample(times[next], xs[next], 0f);
+                next++;
+            }
+            final float finger = fingerX(frameTime);
+            final float plain = xs[next - 1];
+            mResampler.resample(frameTime);
+            final float resampled = mResampler.getX();
+            plainLag += Math.abs(finger - plain);
+            resampledLag += Math.abs(finger - resampled);
+            // Beyond the turning point is never where the finger was
+            maxOvershoot = Math.max(maxOvershoot, resampled - fingerX(200L + 1000L));
+            frames++;
+        }
+        plainLag /= frames;
+        resampledLag /= frames;
+
+        assertTrue("resampled " + resampledLag + " vs plain " + plainLag,
+            resampledLag < plainLag * 0.75);
+        assertTrue("overshoot " + maxOvershoot,
+            maxOvershoot <= 2f * TouchResampler.MAX_PREDICTION_MILLIS);
+    }
+
+    private static float fingerX(long timeMillis) {
+        final long t = timeMillis - 1000L;
+        return t <= 200L ? 2f * t : 2f * (400L - t);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransformInterpolationTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void end_isHandedOutVerbatim() {
+        final TransformState start = new TransformState();
+        start.setScale(1.5f, 20f, 30f);
+        final TransformInterpolation interpolation = new TransformInterpolation();
+        interpolation.start(start, 2f, 30f, 100f, 50f);
+        interpolation.setCorrection(5f, -7f);
+
+        final TransformState frame = new TransformState();
+        interpolation.getState(0.5f, frame);
+        interpolation.getState(1f, frame);
+        assertSame(interpolation.getEnd(), frame);
+    }
+
+    @Test
+    public void end_matchesMatrixComposition() {
+        final AffineMatrix expected = new AffineMatrix();
+        expected.setSimilarity(1.5f, 20f, 30f, -10f);
+        final TransformState start = new TransformState();
+        start.set(expected);
+        expected.postScale(2f, 2f, 100f, 50f);
+        expected.postRotate(30f, 100f, 50f);
+        expected.postTranslate(5f, -7f);
+
+        final TransformInterpolation interpolation = new TransformInterpolation();
+        interpolation.start(start, 2f, 30f, 100f, 50f);
+        interpolation.setCorrection(5f, -7f);
+        final AffineMatrix end = new AffineMatrix();
+        interpolation.getEnd().toMatrix(end);
+        assertTrue(end + " vs " + expected, end.nearlyEquals(expected, EPSILON));
+    }
+
+    @Test
+    public void frame_isInterpolatedFromTheStart() {
+        final TransformState start = new TransformState();
+        start.postTranslate(12f, 8f);
+        final TransformInterpolation interpolation = new TransformInterpolation();
+        interpolation.start(start, 3f, -90f, 40f, 60f);
+        interpolation.setCorrection(10f, 20f);
+
+        final TransformState frame = new TransformState();
+        interpolation.getState(0.5f, frame);
+        final AffineMatrix expected = new AffineMatrix();
+        expected.setTranslate(12f, 8f);
+        expected.postScale(2f, 2f, 40f, 60f);
+        expected.postRotate(-45f, 40f, 60f);
+        expected.postTranslate(5f, 10f);
+        final AffineMatrix actual = new AffineMatrix();
+        frame.toMatrix(actual);
+        assertTrue(actual + " vs " + expected, actual.nearlyEquals(expected, EPSILON));
+        assertEquals(2f, interpolation.getScale(0.5f), 0f);
+    }
+
+    @Test
+    public void setCorrection_replacesThePreviousOne() {
+        final TransformState start = new TransformState();
+        final TransformInterpolation interpolation = new TransformInterpolation();
+        interpolation.start(start, 1f, 0f, 0f, 0f);
+        interpolation.setCorrection(100f, 100f);
+        interpolation.setCorrection(4f, -2f);
+        assertEquals(4f, interpolation.getEnd().getTransX(), 0f);
+        assertEquals(-2f, interpolation.getEnd().getTransY(), 0f);
+    }
+
+    @Test
+    public void zoomAndRotateCycles_frameByFrame_matchEndStatesAlone() {
+        final TransformState stepped = new TransformState();
+        final TransformState jumped = new TransformState();
+        final TransformInterpolation interpolation = new TransformInterpolation();
+        for (int cycle = 0; cycle < 500; cycle++) {
+            final float scaleFactor = cycle % 2 == 0 ? 2.5f : 0.4f;
+            final float degrees = cycle % 2 == 0 ? 90f : -90f;
+            interpolation.start(stepped, scaleFactor, degrees, 300f, 400f);
+            interpolation.setCorrection(3f, -3f);
+            for (int frame = 1; frame <= 20; frame++) {
+                interpolation.getState(frame / 20f, stepped);
+            }
+            interpolation.start(jumped, scaleFactor, degrees, 300f, 400f);
+            interpolation.setCorrection(3f, -3f);
+            interpolation.getState(1f, jumped);
+        }
+        // Frames leave nothing behind, only each animation's end state counts
+        assertSame(jumped, stepped);
+    }
+
+    private static void assertSame(TransformState expected, TransformState actual) {
+        assertEquals(expected.getScale(), actual.getScale(), 0f);
+        assertEquals(expected.getRotation(), actual.getRotation(), 0f);
+        assertEquals(expected.getTransX(), actual.getTransX(), 0f);
+        assertEquals(expected.getTransY(), actual.getTransY(), 0f);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransformStateTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void postOperations_matchTheMatrix() {
+        final TransformState state = new TransformState();
+        final AffineMatrix matrix = new AffineMatrix();
+        for (int i = 0; i < 20; i++) {
+            final float px = 13f * i, py = -7f * i;
+            state.postScale(1.1f, px, py);
+            matrix.postScale(1.1f, 1.1f, px, py);
+            state.postRotate(17f, py, px);
+            matrix.postRotate(17f, py, px);
+            state.postTranslate(3f, -2f);
+            matrix.postTranslate(3f, -2f);
+        }
+        final AffineMatrix built = new AffineMatrix();
+        state.toMatrix(built);
+        assertTrue(built + " vs " + matrix, built.nearlyEquals(matrix, EPSILON));
+    }
+
+    @Test
+    public void rotation_staysInRange() {
+        final TransformState state = new TransformState();
+        state.postRotate(170f, 0f, 0f);
+        state.postRotate(20f, 0f, 0f);
+        assertEquals(-170f, state.getRotation(), EPSILON);
+        state.postRotate(-10f, 0f, 0f);
+        assertEquals(180f, state.getRotation(), EPSILON);
+    }
+
+    @Test
+    public void set_dropsSkew() {
+        final AffineMatrix matrix = new AffineMatrix();
+        matrix.setSimilarity(2f, 30f, 5f, 6f);
+        final AffineMatrix skew = new AffineMatrix();
+        skew.set(1f, 0.2f, 0f, 0f, 1f, 0f);
+        matrix.preConcat(skew);
+
+        final TransformState state = new TransformState();
+        state.set(matrix);
+        final AffineMatrix built = new AffineMatrix();
+        state.toMatrix(built);
+        assertEquals(2f, built.getScale(), EPSILON);
+        assertEquals(30f, built.getRotation(), EPSILON);
+        assertEquals(5f, built.getTransX(), 0f);
+        assertEquals(6f, built.getTransY(), 0f);
+        // Scale and rotation agree, so the columns stay orthogonal
+        assertEquals(built.getScaleX(), built.getScaleY(), EPSILON);
+        assertEquals(-built.getSkewX(), built.getSkewY(), EPSILON);
+    }
+
+    @Test
+    public void setScale_keepsPivotInPlace() {
+        final TransformState state = new TransformState();
+        state.setScale(4f, 10f, 20f);
+        final AffineMatrix built = new AffineMatrix();
+        state.toMatrix(built);
+        final float[] pivot = {10f, 20f};
+        built.mapPoints(pivot);
+        assertEquals(10f, pivot[0], EPSILON);
+        assertEquals(20f, pivot[1], EPSILON);
+    }
+}
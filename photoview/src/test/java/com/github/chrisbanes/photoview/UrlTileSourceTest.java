@@ -0,0 +1,277 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import androidx.annotation.NonNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link UrlTileSource} downloads against a local HTTP server that holds every response until
+ * the test lets it go, so requests can be lined up while a download is in flight.
+ */
+public class UrlTileSourceTest {
+
+    private static final long TIMEOUT_SECONDS = 10L;
+    // Long enough for request threads to join a download that is being held
+    private static final long SETTLE_MILLIS = 300L;
+    private static final int BODY_BYTES = 64 * 1024;
+
+    private HttpServer mServer;
+    private ExecutorService mThreads;
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final CountDownLatch mFirstHit = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private TestSource mSource;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        mThreads = Executors.newCachedThreadPool();
+        mSource = new TestSource("http://127.0.0.1:" + mServer.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mThreads.shutdownNow();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void concurrentRequestsForOneTile_shareOneDownload() throws Exception {
+        final String url = mSource.getTileUrl(0, 1, 2);
+        final ArrayList<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(fetchAsync(url, new TestRequest()));
+        }
+        awaitFirstHit();
+        mRelease.countDown();
+
+        final byte[] expected = body(url);
+        for (Future<byte[]> result : results) {
+            assertArrayEquals(expected, result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(1, mHits.get());
+    }
+
+    @Test
+    public void requestsForDifferentTiles_downloadSeparately() throws Exception {
+        final Future<byte[]> first = fetchAsync(mSource.getTileUrl(0, 0, 0), new TestRequest());
+        final Future<byte[]> second = fetchAsync(mSource.getTileUrl(0, 1, 0), new TestRequest());
+        mRelease.countDown();
+        assertArrayEquals(body(mSource.getTileUrl(0, 0, 0)),
+            first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertArrayEquals(body(mSource.getTileUrl(0, 1, 0)),
+            second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, mHits.get());
+    }
+
+    @Test
+    public void cancelledWaiter_returnsEarly_downloadCarriesOn() throws Exception {
+        final String url = mSource.getTileUrl(2, 0, 0);
+        final Future<byte[]> downloader = fetchAsync(url, new TestRequest());
+        awaitFirstHit();
+        final TestRequest waiting = new TestRequest();
+        final Future<byte[]> waiter = fetchAsync(url, waiting);
+        Thread.sleep(SETTLE_MILLIS);
+
+        waiting.mCancelled = true;
+        assertNull(waiter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mRelease.countDown();
+        assertArrayEquals(body(url), downloader.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mHits.get());
+    }
+
+    @Test
+    public void everyRequestCancelled_abandonsDownload() throws Exception {
+        final String url = mSource.getTileUrl(0, 3, 3);
+        final TestRequest request = new TestRequest();
+        final Future<byte[]> abandoned = fetchAsync(url, request);
+        awaitFirstHit();
+        request.mCancelled = true;
+        mRelease.countDown();
+        assertNull(abandoned.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Nothing is left waiting on the abandoned download, so the next request starts afresh
+        assertArrayEquals(body(url), mSource.fetch(url, new TestRequest()));
+        assertEquals(2, mHits.get());
+    }
+
+    @Test
+    public void failedDownload_failsEveryWaiter() throws Exception {
+        final String url = mSource.getBaseUrl() + "/missing";
+        final Future<byte[]> downloader = fetchAsync(url, new TestRequest());
+        awaitFirstHit();
+        final Future<byte[]> waiter = fetchAsync(url, new TestRequest());
+        Thread.sleep(SETTLE_MILLIS);
+        mRelease.countDown();
+        for (Future<byte[]> result : Arrays.asList(downloader, waiter)) {
+            try {
+                result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                fail("Expected the download to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(1, mHits.get());
+    }
+
+    private Future<byte[]> fetchAsync(final String url, final TestRequest request) {
+        return mThreads.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return mSource.fetch(url, request);
+            }
+        });
+    }
+
+    private void awaitFirstHit() throws InterruptedException {
+        assertTrue(mFirstHit.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // Gives the other request threads time to find the download in flight
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    /**
+     * Sends the first part of the body, then holds the rest until released, so a download is in
+     * flight and can be joined or abandoned
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        mHits.incrementAndGet();
+        mFirstHit.countDown();
+        final String path = exchange.getRequestURI().getPath();
+        try {
+            if (path.endsWith("/missing")) {
+                await(mRelease);
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final byte[] body = body(mSource.getBaseUrl() + path);
+            exchange.sendResponseHeaders(200, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            final int half = body.length / 2;
+            out.write(body, 0, half);
+            out.flush();
+            await(mRelease);
+            out.write(body, half, body.length - half);
+            out.close();
+        } catch (IOException e) {
+            // The client hung up on an abandoned download
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return what the server sends for {@code url}, different for every URL
+     */
+    private static byte[] body(String url) {
+        final byte[] body = new byte[BODY_BYTES];
+        final int seed = url.hashCode();
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (seed * 31 + i);
+        }
+        return body;
+    }
+
+    private static final class TestSource extends UrlTileSource {
+
+        private final String mBaseUrl;
+
+        TestSource(String baseUrl) {
+            super(4096, 4096, 256);
+            mBaseUrl = baseUrl;
+        }
+
+        String getBaseUrl() {
+            return mBaseUrl;
+        }
+
+        @NonNull
+        @Override
+        protected String getTileUrl(int level, int column, int row) {
+            return mBaseUrl + "/" + level + "/" + column + "_" + row + ".jpg";
+        }
+    }
+
+    private static final class TestRequest implements TileSource.Request {
+
+        volatile boolean mCancelled;
+
+        @Override
+        public int getLevel() {
+            return 0;
+        }
+
+        @Override
+        public int getColumn() {
+            return 0;
+        }
+
+        @Override
+        public int getRow() {
+            return 0;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+}
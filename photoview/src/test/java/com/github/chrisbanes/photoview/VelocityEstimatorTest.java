@@ -0,0 +1,171 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class VelocityEstimatorTest {
+
+    // Pixels per second; the estimate is a float computed from doubles
+    private static final float EPSILON = 0.05f;
+    // Intervals of a 240 Hz digitizer in one horizon
+    private static final int SAMPLES_240HZ = (int) (VelocityEstimator.HORIZON_MILLIS * 240 / 1000);
+
+    private VelocityEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new VelocityEstimator();
+    }
+
+    @Test
+    public void constantVelocity_givesExactSlope() {
+        // 0.5 px/ms along x and -1.5 px/ms along y
+        for (int i = 0; i < 8; i++) {
+            final long time = 1000L + i * 8L;
+            mEstimator.addSample(time, 10f + 0.5f * i * 8, 300f - 1.5f * i * 8);
+        }
+        mEstimator.computeVelocity(1056L);
+        assertEquals(500f, mEstimator.getVelocityX(), EPSILON);
+        assertEquals(-1500f, mEstimator.getVelocityY(), EPSILON);
+    }
+
+    @Test
+    public void twoSamples_fitALine() {
+        mEstimator.addSample(1000L, 0f, 0f);
+        mEstimator.addSample(1010L, 20f, -5f);
+        mEstimator.computeVelocity(1010L);
+        assertEquals(2000f, mEstimator.getVelocityX(), EPSILON);
+        assertEquals(-500f, mEstimator.getVelocityY(), EPSILON);
+    }
+
+    @Test
+    public void constantAcceleration_givesSlopeAtNewestSample() {
+        // x = 0.01 t^2, so the speed at the newest sample, t = 70 ms, is 1.4 px/ms; the average
+        // speed over the samples would only be half that
+        for (int t = 0; t <= 70; t += 10) {
+            mEstimator.addSample(1000L + t, 0.01f * t * t, 0f);
+        }
+        mEstimator.computeVelocity(1070L);
+        assertEquals(1400f, mEstimator.getVelocityX(), 1f);
+        assertEquals(0f, mEstimator.getVelocityY(), EPSILON);
+    }
+
+    @Test
+    public void samplesOutsideHorizon_areIgnored() {
+        // Fast, then steady for longer than the horizon
+        mEstimator.addSample(1000L, 0f, 0f);
+        mEstimator.addSample(1030L, 300f, 0f);
+        for (int t = 60; t <= 180; t += 30) {
+            mEstimator.addSample(1000L + t, 300f + (t - 30), 0f);
+        }
+        mEstimator.computeVelocity(1180L);
+        assertEquals(1000f, mEstimator.getVelocityX(), EPSILON);
+    }
+
+    @Test
+    public void pauseBeforeLifting_givesZero() {
+        mEstimator.addSample(1000L, 0f, 0f);
+        mEstimator.addSample(1010L, 10f, 0f);
+        // Lifted more than 40 ms after the last movement
+        mEstimator.computeVelocity(1051L);
+        assertEquals(0f, mEstimator.getVelocityX(), 0f);
+        assertEquals(0f, mEstimator.getVelocityY(), 0f);
+    }
+
+    @Test
+    public void pauseBetweenSamples_clearsHistory() {
+        // Fast movement, a pause of more than 40 ms, then slow movement
+        mEstimator.addSample(1000L, 0f, 0f);
+        mEstimator.addSample(1010L, 100f, 0f);
+        mEstimator.addSample(1060L, 100f, 0f);
+        mEstimator.addSample(1070L, 101f, 0f);
+        mEstimator.computeVelocity(1070L);
+        assertEquals(100f, mEstimator.getVelocityX(), EPSILON);
+    }
+
+    @Test
+    public void ringBuffer_wrapsAroundToTheNewestSamples() {
+        // Ten samples moving one way, then a full buffer moving the other, all within the horizon:
+        // only the newest ones fit in the buffer
+        float x = 0f;
+        long time = 1000L;
+        for (int i = 0; i < 10; i++) {
+            mEstimator.addSample(time, x, 0f);
+            time += 1L;
+            x += 30f;
+        }
+        for (int i = 0; i < VelocityEstimator.HISTORY_SIZE; i++) {
+            mEstimator.addSample(time, x, 0f);
+            time += 1L;
+            x -= 1f;
+        }
+        mEstimator.computeVelocity(time - 1L);
+        assertEquals(-1000f, mEstimator.getVelocityX(), EPSILON);
+    }
+
+    @Test
+    public void at240Hz_constantVelocity_givesExactSlope() {
+        for (int i = 0; i <= SAMPLES_240HZ; i++) {
+            final long time = time240Hz(i);
+            mEstimator.addSample(time, 2f * time, -0.5f * time);
+        }
+        mEstimator.computeVelocity(time240Hz(SAMPLES_240HZ));
+        assertEquals(2000f, mEstimator.getVelocityX(), EPSILON);
+        assertEquals(-500f, mEstimator.getVelocityY(), EPSILON);
+    }
+
+    @Test
+    public void at240Hz_oldestSamplesInsideTheHorizon_stillCount() {
+        // Fast for the first 20 ms, then steady for the rest of the horizon
+        final VelocityEstimator newest = new VelocityEstimator();
+        for (int i = 0; i <= SAMPLES_240HZ; i++) {
+            final long time = time240Hz(i);
+            final long elapsed = time - time240Hz(0);
+            final float x = elapsed < 20L ? 8f * elapsed : 160f + 2f * (elapsed - 20L);
+            mEstimator.addSample(time, x, 0f);
+            if (elapsed >= 20L) {
+                newest.addSample(time, x, 0f);
+            }
+        }
+        mEstimator.computeVelocity(time240Hz(SAMPLES_240HZ));
+        newest.computeVelocity(time240Hz(SAMPLES_240HZ));
+        assertEquals(2000f, newest.getVelocityX(), EPSILON);
+        // Had the buffer dropped the fast samples, both would see the same steady movement
+        assertNotEquals(newest.getVelocityX(), mEstimator.getVelocityX(), 10f);
+    }
+
+    @Test
+    public void clear_forgetsEverySample() {
+        mEstimator.addSample(1000L, 0f, 0f);
+        mEstimator.addSample(1010L, 10f, 0f);
+        mEstimator.clear();
+        mEstimator.addSample(1020L, 50f, 0f);
+        mEstimator.computeVelocity(1020L);
+        assertEquals(0f, mEstimator.getVelocityX(), 0f);
+    }
+
+    /**
+     * @return time in ms of the given sample of a 240 Hz digitizer, rounded like event times
+     */
+    private static long time240Hz(int sample) {
+        return 1000L + Math.round(sample * 1000.0 / 240);
+    }
+}
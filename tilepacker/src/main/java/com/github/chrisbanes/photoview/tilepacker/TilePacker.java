@@ -0,0 +1,409 @@
+/*
+ Copyright 2011, 2012 Chris Banes.
+ <p>
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ <p>
+ http://www.apache.org/licenses/LICENSE-2.0
+ <p>
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.github.chrisbanes.photoview.tilepacker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Cuts a large image into the tile pyramid PhotoView's tiled mode uses, and stores it in a single
+ * pack file that the library memory-maps at runtime.
+ * <p>
+ * Level 0 is the full resolution image and every level above halves it, up to the first level
+ * that fits in one tile. At every level tiles are {@code tileSize} pixels square, smaller at the
+ * right and bottom edges. The source is read one band of tile rows at a time, and every coarser
+ * level is made by halving the rows of the level below as they come in. Only one band per level
+ * is held at a time, so memory grows with the width of the image rather than its area.
+ * <p>
+ * Pack layout, all big-endian:
+ * <pre>
+ * int   magic 'PVTP'
+ * int   version (1)
+ * int   image width
+ * int   image height
+ * int   tile size
+ * int   level count
+ * int   tile count
+ * tile count times:
+ *   int  level, int column, int row, long offset, int length
+ * tile data: each tile encoded as a JPEG or PNG, at the offsets given in the index
+ * </pre>
+ */
+public final class TilePacker {
+
+    static final int MAGIC = 0x50565450;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 7 * 4;
+    static final int INDEX_ENTRY_BYTES = 3 * 4 + 8 + 4;
+
+    private static final int DEFAULT_TILE_SIZE = 256;
+    private static final float DEFAULT_QUALITY = 0.85f;
+
+    private final int mTileSize;
+    private final String mFormat;
+    private final float mQuality;
+
+    public TilePacker(int tileSize, String format, float quality) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        if (!"jpg".equals(format) && !"png".equals(format)) {
+            throw new IllegalArgumentException("Format must be jpg or png");
+        }
+        mTileSize = tileSize;
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int tileSize = DEFAULT_TILE_SIZE;
+        String format = "jpg";
+        float quality = DEFAULT_QUALITY;
+        String input = null;
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--tile-size".equals(arg) && i + 1 < args.length) {
+                tileSize = Integer.parseInt(args[++i]);
+            } else if ("--format".equals(arg) && i + 1 < args.length) {
+                format = args[++i].toLowerCase(Locale.US);
+            } else if ("--quality".equals(arg) && i + 1 < args.length) {
+                quality = Float.parseFloat(args[++i]);
+            } else if (input == null) {
+                input = arg;
+            } else if (output == null) {
+                output = arg;
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (input == null || output == null) {
+            usage();
+            return;
+        }
+        final long start = System.nanoTime();
+        final int tiles = new TilePacker(tileSize, format, quality)
+            .pack(new File(input), new File(output));
+        System.out.printf(Locale.US, "Packed %d tiles into %s in %d ms%n", tiles, output,
+            (System.nanoTime() - start) / 1000000L);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: tilepacker [--tile-size 256] [--format jpg|png] "
+            + "[--quality 0.85] <input image> <output pack>");
+        System.exit(1);
+    }
+
+    /**
+     * @return the number of tiles written
+     */
+    public int pack(File input, File output) throws IOException {
+        final ImageInputStream in = ImageIO.createImageInputStream(input);
+        if (in == null) {
+            throw new IOException("Cannot open " + input);
+        }
+        try {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + input);
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return pack(reader, output);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private int pack(ImageReader reader, File output) throws IOException {
+        final int width = reader.getWidth(0);
+        final int height = reader.getHeight(0);
+        final int levelCount = getLevelCount(width, height, mTileSize);
+        int tileCount = 0;
+        for (int level = 0; level < levelCount; level++) {
+            tileCount += getColumnCount(width, level) * getRowCount(height, level);
+        }
+
+        // Write into a temporary file and rename, so a failed run leaves no half written pack
+        final File temp = new File(output.getPath() + ".tmp");
+        final RandomAccessFile file = new RandomAccessFile(temp, "rw");
+        try {
+            file.setLength(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(width);
+            file.writeInt(height);
+            file.writeInt(mTileSize);
+            file.writeInt(levelCount);
+            file.writeInt(tileCount);
+            final PackWriter writer = new PackWriter(file, file.getFilePointer(), tileCount);
+            Level coarser = null;
+            int levelStart = tileCount;
+            for (int level = levelCount - 1; level >= 0; level--) {
+                levelStart -= getColumnCount(width, level) * getRowCount(height, level);
+                coarser = new Level(level, width, height, levelStart, writer, coarser);
+            }
+            readLevelZero(reader, width, height, coarser);
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        if (output.exists() && !output.delete()) {
+            throw new IOException("Cannot replace " + output);
+        }
+        if (!temp.renameTo(output)) {
+            throw new IOException("Cannot rename " + temp + " to " + output);
+        }
+        return tileCount;
+    }
+
+    /**
+     * Decodes the source one band of tile rows at a time and feeds it to level 0 row by row. A
+     * decoder that can only skip forward by decoding, as JPEG's does, then passes over the image
+     * once per band instead of once per tile of every level.
+     */
+    private void readLevelZero(ImageReader reader, int width, int height, Level levelZero)
+        throws IOException {
+        final int[] row = new int[width];
+        final ImageReadParam param = reader.getDefaultReadParam();
+        for (int top = 0; top < height; top += mTileSize) {
+            final int rows = Math.min(mTileSize, height - top);
+            param.setSourceRegion(new Rectangle(0, top, width, rows));
+            final BufferedImage band = reader.read(0, param);
+            for (int y = 0; y < rows; y++) {
+                band.getRGB(0, y, width, 1, row, 0, width);
+                levelZero.addRow(row);
+            }
+        }
+    }
+
+    /**
+     * Same rule as the library's TilePyramid: levels go up until the image fits in one tile
+     */
+    static int getLevelCount(int width, int height, int tileSize) {
+        int level = 0;
+        while ((Math.max(width, height) >> level) > tileSize) {
+            level++;
+        }
+        return level + 1;
+    }
+
+    private int getExtent(int level) {
+        return mTileSize << level;
+    }
+
+    private int getColumnCount(int width, int level) {
+        return (width + getExtent(level) - 1) / getExtent(level);
+    }
+
+    private int getRowCount(int height, int level) {
+        return (height + getExtent(level) - 1) / getExtent(level);
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(mFormat).next();
+        final MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes);
+        try {
+            writer.setOutput(out);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(mFormat)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(mQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Size of level {@code level} in pixels along an axis of {@code size} full resolution pixels.
+     * Matches what BitmapRegionDecoder produces for each tile, so packed tiles line up the same
+     * way: the last tile is at least one pixel even where halving would leave nothing of it.
+     */
+    private int getLevelSize(int size, int level) {
+        final int extent = getExtent(level);
+        final int tiles = (size + extent - 1) / extent;
+        return (tiles - 1) * mTileSize + Math.max(1, (size - (tiles - 1) * extent) >> level);
+    }
+
+    /**
+     * Writes tiles and their index entries. Tiles are appended in the order they are finished,
+     * which is not index order, as the index is read by arithmetic.
+     */
+    private static final class PackWriter {
+
+        private final RandomAccessFile mFile;
+        private final long mIndexStart;
+        private long mDataOffset;
+
+        PackWriter(RandomAccessFile file, long indexStart, int tileCount) {
+            mFile = file;
+            mIndexStart = indexStart;
+            mDataOffset = indexStart + (long) tileCount * INDEX_ENTRY_BYTES;
+        }
+
+        void write(int entry, int level, int column, int row, byte[] bytes) throws IOException {
+            mFile.seek(mDataOffset);
+            mFile.write(bytes);
+            mFile.seek(mIndexStart + (long) entry * INDEX_ENTRY_BYTES);
+            mFile.writeInt(level);
+            mFile.writeInt(column);
+            mFile.writeInt(row);
+            mFile.writeLong(mDataOffset);
+            mFile.writeInt(bytes.length);
+            mDataOffset += bytes.length;
+        }
+    }
+
+    /**
+     * One level of the pyramid, built up row by row. Every full band of tile rows is cut into
+     * tiles, and every pair of rows is averaged down into a row of the next coarser level.
+     */
+    private final class Level {
+
+        private final int mLevel;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mColumns;
+        private final int mFirstEntry;
+        private final PackWriter mWriter;
+        private final Level mCoarser;
+        // The band of tile rows being filled, mWidth pixels per row
+        private final int[] mBand;
+        private int mBandRows;
+        private int mTileRow;
+        private int mRowsAdded;
+        // First row of a pair, waiting for the second one before it is halved
+        private final int[] mPendingRow;
+        private boolean mHasPendingRow;
+        private final int[] mHalvedRow;
+        private final BufferedImage mTile;
+
+        Level(int level, int imageWidth, int imageHeight, int firstEntry, PackWriter writer,
+            Level coarser) {
+            mLevel = level;
+            mWidth = getLevelSize(imageWidth, level);
+            mHeight = getLevelSize(imageHeight, level);
+            mColumns = getColumnCount(imageWidth, level);
+            mFirstEntry = firstEntry;
+            mWriter = writer;
+            mCoarser = coarser;
+            mBand = new int[mWidth * Math.min(mTileSize, mHeight)];
+            mPendingRow = coarser != null ? new int[mWidth] : null;
+            mHalvedRow = coarser != null ? new int[coarser.mWidth] : null;
+            mTile = new BufferedImage(Math.min(mTileSize, mWidth), Math.min(mTileSize, mHeight),
+                "jpg".equals(mFormat) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+
+        /**
+         * @param row {@code mWidth} ARGB pixels, copied rather than kept
+         */
+        void addRow(int[] row) throws IOException {
+            if (mRowsAdded == mHeight) {
+                // The level above had a pixel more to halve than this one needs
+                return;
+            }
+            System.arraycopy(row, 0, mBand, mBandRows * mWidth, mWidth);
+            mBandRows++;
+            mRowsAdded++;
+            if (mBandRows == mTileSize || mRowsAdded == mHeight) {
+                writeBand();
+            }
+            if (mCoarser == null) {
+                return;
+            }
+            if (mHasPendingRow) {
+                halve(mPendingRow, row);
+                mHasPendingRow = false;
+            } else {
+                System.arraycopy(row, 0, mPendingRow, 0, mWidth);
+                mHasPendingRow = true;
+            }
+            if (mRowsAdded == mHeight) {
+                // An odd row out at the bottom still feeds the coarser level if it needs one
+                // more
+                if (mHasPendingRow) {
+                    halve(mPendingRow, mPendingRow);
+                }
+                while (mCoarser.mRowsAdded < mCoarser.mHeight) {
+                    mCoarser.addRow(mHalvedRow);
+                }
+            }
+        }
+
+        private void writeBand() throws IOException {
+            for (int column = 0; column < mColumns; column++) {
+                final int left = column * mTileSize;
+                final int tileWidth = Math.min(mTileSize, mWidth - left);
+                final BufferedImage tile = tileWidth == mTile.getWidth()
+                    && mBandRows == mTile.getHeight() ? mTile : new BufferedImage(tileWidth,
+                    mBandRows, mTile.getType());
+                tile.setRGB(0, 0, tileWidth, mBandRows, mBand, left, mWidth);
+                mWriter.write(mFirstEntry + mTileRow * mColumns + column, mLevel, column,
+                    mTileRow, encode(tile));
+            }
+            mTileRow++;
+            mBandRows = 0;
+        }
+
+        /**
+         * Averages two rows down to one row of the coarser level, two pixels to one
+         */
+        private void halve(int[] top, int[] bottom) throws IOException {
+            final int last = mWidth - 1;
+            for (int x = 0, width = mCoarser.mWidth; x < width; x++) {
+                final int left = Math.min(2 * x, last);
+                final int right = Math.min(2 * x + 1, last);
+                mHalvedRow[x] = average(top[left], top[right], bottom[left], bottom[right]);
+            }
+            mCoarser.addRow(mHalvedRow);
+        }
+    }
+
+    private static int average(int a, int b, int c, int d) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int sum = ((a >>> shift) & 0xff) + ((b >>> shift) & 0xff)
+                + ((c >>> shift) & 0xff) + ((d >>> shift) & 0xff);
+            result |= ((sum + 2) >> 2) << shift;
+        }
+        return result;
+    }
+}
@@ -52,7 +52,10 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
     private final Matrix mDrawMatrix = new Matrix();
     private final Matrix mSuppMatrix = new Matrix();
     private final RectF mDisplayRect = new RectF();
-    private final float[] mMatrixValues = new float[9];
+    // Uniform scale and rotation of mSuppMatrix, updated along with every change to it so that
+    // reading them needs neither a native call nor any trigonometry
+    private float mSuppScale = 1f;
+    private float mSuppRotation;
 
     private int mImageInfoHeight = -1, mImageInfoWidth = -1;
     private FlingRunnable mCurrentFlingRunnable;
@@ -183,9 +186,14 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
     }
 
     public float getScale() {
-        return (float) Math.sqrt(
-                (float) Math.pow(getMatrixValue(mSuppMatrix, Matrix.MSCALE_X), 2) + (float) Math.pow(
-                        getMatrixValue(mSuppMatrix, Matrix.MSKEW_Y), 2));
+        return mSuppScale;
+    }
+
+    /**
+     * @return the rotation of the supp matrix in degrees, in the range (-180, 180]
+     */
+    public float getRotation() {
+        return mSuppRotation;
     }
 
     public float getCompensateScaleValue() {
@@ -248,6 +256,8 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
             }
             else {
                 mSuppMatrix.setScale(scale, scale, focalX, focalY);
+                mSuppScale = scale;
+                mSuppRotation = 0f;
                 checkMatrixAndInvalidate();
             }
         }
@@ -334,14 +344,14 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
             return;
         }
 
-        mSuppMatrix.postScale(scaleResetValue, scaleResetValue);
+        postSuppScale(scaleResetValue, 0f, 0f);
 
-        mSuppMatrix.postScale(scaleValue, scaleValue);
+        postSuppScale(scaleValue, 0f, 0f);
 
         if (clockwise)
-            mSuppMatrix.postRotate(90);
+            postSuppRotate(90);
         else
-            mSuppMatrix.postRotate(-90);
+            postSuppRotate(-90);
 
         switch (mCurrentRotation) {
             case DEGREE_0:
@@ -419,11 +429,6 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
         return 0;
     }
 
-    private float getMatrixValue(Matrix matrix, int whichValue) {
-        matrix.getValues(mMatrixValues);
-        return mMatrixValues[whichValue];
-    }
-
     public void getSuppMatrix(Matrix matrix) {
         matrix.set(mSuppMatrix);
     }
@@ -448,14 +453,36 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
 
     public void setRotationTo(float degrees) {
         mSuppMatrix.setRotate(degrees % 360);
+        mSuppScale = 1f;
+        mSuppRotation = normalizeDegrees(degrees);
         checkMatrixAndInvalidate();
     }
 
     public void setRotationBy(float degrees) {
-        mSuppMatrix.postRotate(degrees % 360);
+        postSuppRotate(degrees % 360);
         checkMatrixAndInvalidate();
     }
 
+    private void postSuppScale(float scaleFactor, float px, float py) {
+        mSuppMatrix.postScale(scaleFactor, scaleFactor, px, py);
+        mSuppScale *= scaleFactor;
+    }
+
+    private void postSuppRotate(float degrees) {
+        mSuppMatrix.postRotate(degrees);
+        mSuppRotation = normalizeDegrees(mSuppRotation + degrees);
+    }
+
+    private static float normalizeDegrees(float degrees) {
+        degrees %= 360f;
+        if (degrees > 180f) {
+            degrees -= 360f;
+        } else if (degrees <= -180f) {
+            degrees += 360f;
+        }
+        return degrees;
+    }
+
     public void checkMatrixAndInvalidate() {
 
         DraweeView<GenericDraweeHierarchy> draweeView = getDraweeView();
@@ -578,7 +605,7 @@ public class Attacher implements View.OnTouchListener, OnScaleDragGestureListene
                 mScaleChangeListener.onScaleChange(scaleFactor, focusX, focusY);
             }
 
-            mSuppMatrix.postScale(scaleFactor, scaleFactor, focusX, focusY);
+            postSuppScale(scaleFactor, focusX, focusY);
             checkMatrixAndInvalidate();
         }
     }